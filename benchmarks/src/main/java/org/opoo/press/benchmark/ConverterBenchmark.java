@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.Converter;
+import org.opoo.press.Site;
+import org.opoo.press.converter.TxtmarkMarkdownConverter;
+import org.opoo.press.converter.WikiTextConfluenceConverter;
+import org.opoo.press.converter.WikiTextMediaWikiConverter;
+import org.opoo.press.converter.WikiTextTWikiConverter;
+import org.opoo.press.converter.WikiTextTextileConverter;
+import org.opoo.press.converter.WikiTextTracWikiConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the markup converters, the same document written in
+ * each markup language.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+	private static final String TEXTILE = "h2. Section\n\n"
+			+ "Lorem _ipsum_ dolor sit amet, \"consectetur\":http://example.com adipiscing elit.\n\n"
+			+ "* item one\n* item *two*\n* item three\n\n"
+			+ "bc. public int sum(int a, int b){ return a + b; }\n\n";
+	private static final String MEDIAWIKI = "== Section ==\n\n"
+			+ "Lorem ''ipsum'' dolor sit amet, [http://example.com consectetur] adipiscing elit.\n\n"
+			+ "* item one\n* item '''two'''\n* item three\n\n"
+			+ " public int sum(int a, int b){ return a + b; }\n\n";
+	private static final String CONFLUENCE = "h2. Section\n\n"
+			+ "Lorem _ipsum_ dolor sit amet, [consectetur|http://example.com] adipiscing elit.\n\n"
+			+ "* item one\n* item *two*\n* item three\n\n"
+			+ "{code}public int sum(int a, int b){ return a + b; }{code}\n\n";
+	private static final String TWIKI = "---++ Section\n\n"
+			+ "Lorem _ipsum_ dolor sit amet, [[http://example.com][consectetur]] adipiscing elit.\n\n"
+			+ "   * item one\n   * item *two*\n   * item three\n\n"
+			+ "<verbatim>public int sum(int a, int b){ return a + b; }</verbatim>\n\n";
+	private static final String TRACWIKI = "== Section ==\n\n"
+			+ "Lorem ''ipsum'' dolor sit amet, [http://example.com consectetur] adipiscing elit.\n\n"
+			+ " * item one\n * item '''two'''\n * item three\n\n"
+			+ "{{{\npublic int sum(int a, int b){ return a + b; }\n}}}\n\n";
+
+	@Param({"markdown", "textile", "mediawiki", "confluence", "twiki", "tracwiki"})
+	private String format;
+
+	private SiteFixture fixture;
+	private Converter converter;
+	private String content;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		if("markdown".equals(format)){
+			fixture = SiteFixture.create(0);
+			Site site = fixture.createSite(null);
+			TxtmarkMarkdownConverter markdown = new TxtmarkMarkdownConverter();
+			markdown.initialize(site);
+			converter = markdown;
+			content = new SiteGenerator().postBody(0, true);
+		}else if("textile".equals(format)){
+			converter = new WikiTextTextileConverter();
+			content = repeat(TEXTILE);
+		}else if("mediawiki".equals(format)){
+			converter = new WikiTextMediaWikiConverter();
+			content = repeat(MEDIAWIKI);
+		}else if("confluence".equals(format)){
+			converter = new WikiTextConfluenceConverter();
+			content = repeat(CONFLUENCE);
+		}else if("twiki".equals(format)){
+			converter = new WikiTextTWikiConverter();
+			content = repeat(TWIKI);
+		}else if("tracwiki".equals(format)){
+			converter = new WikiTextTracWikiConverter();
+			content = repeat(TRACWIKI);
+		}else{
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+	}
+
+	private static String repeat(String section){
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0 ; i < 5 ; i++){
+			sb.append(section);
+		}
+		return sb.toString();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		if(fixture != null){
+			fixture.delete();
+		}
+	}
+
+	@Benchmark
+	public String convert(){
+		return converter.convert(content);
+	}
+}
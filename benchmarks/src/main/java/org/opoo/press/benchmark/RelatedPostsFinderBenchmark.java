@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.Post;
+import org.opoo.press.Site;
+import org.opoo.press.impl.CosineSimilarityRelatedPostsFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link CosineSimilarityRelatedPostsFinder#findRelatedPosts(Post)},
+ * which is called for every post while rendering.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelatedPostsFinderBenchmark {
+	@Param({"100", "1000"})
+	private int posts;
+
+	private SiteFixture fixture;
+	private CosineSimilarityRelatedPostsFinder finder;
+	private List<Post> list;
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		fixture = SiteFixture.create(posts);
+		Site site = fixture.createSite(null);
+		site.build();
+		list = site.getPosts();
+		finder = new CosineSimilarityRelatedPostsFinder();
+		finder.initialize(site);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		fixture.delete();
+	}
+
+	@Benchmark
+	public List<Post> findRelatedPosts(){
+		Post post = list.get(index++ % list.size());
+		return finder.findRelatedPosts(post);
+	}
+}
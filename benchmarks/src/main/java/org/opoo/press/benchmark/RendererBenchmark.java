@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.Post;
+import org.opoo.press.Renderer;
+import org.opoo.press.Site;
+import org.opoo.press.template.TitleCaseModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the FreeMarker renderer: render a post with the 'post'
+ * layout, and render a small inline template like the excerpts and
+ * permalinks.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+	private static final String CONTENT_TEMPLATE = "<h1>${page.title}</h1>\n"
+			+ "<p>${site.config.title} - ${page.date?string('yyyy-MM-dd')}</p>\n"
+			+ "<ul><#list page.tags as tag><li>${tag.name}</li></#list></ul>\n";
+
+	private SiteFixture fixture;
+	private Renderer renderer;
+	private Map<String, Object> rootMap;
+	private String layoutTemplate;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		fixture = SiteFixture.create(20);
+		Site site = fixture.createSite(null);
+		site.build();
+		renderer = site.getRenderer();
+		layoutTemplate = renderer.getLayoutWorkingTemplate("post");
+
+		Post post = site.getPosts().get(0);
+		rootMap = new HashMap<String, Object>();
+		rootMap.put("site", site);
+		rootMap.put("root_url", site.getRoot());
+		rootMap.put("version", "benchmark");
+		TitleCaseModel titleCase = new TitleCaseModel(site);
+		rootMap.put("titleCase", titleCase);
+		rootMap.put("titlecase", titleCase);
+		rootMap.put("page", post);
+		rootMap.put("content", site.getConverter(post.getSource()).convert(new SiteGenerator().postBody(0, true)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		fixture.delete();
+	}
+
+	@Benchmark
+	public String render(){
+		return renderer.render(layoutTemplate, rootMap);
+	}
+
+	@Benchmark
+	public String renderContent(){
+		return renderer.renderContent(CONTENT_TEMPLATE, rootMap);
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.opoo.press.Site;
+
+/**
+ * End-to-end scaling test: generates sites of increasing post counts,
+ * builds each of them and records the wall time, the time of each build
+ * phase and the peak heap usage.
+ *
+ * <p>For every two consecutive sizes the scaling exponent
+ * <code>log(t2/t1) / log(n2/n1)</code> is calculated, 1.0 is linear. A phase
+ * with exponent greater than the threshold is flagged as super-linear,
+ * such as lookups over the full post or tag list for every post.
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.opoo.press.benchmark.ScalingHarness \
+ *     sizes=1000,10000,100000 tags_per_post=5 category_depth=2 assets=500
+ * </pre>
+ *
+ * Options: 'sizes', 'threads', 'threshold' (default 1.3), 'min_ms'
+ * (ignore phases faster than this, default 100), 'warmup' (default true),
+ * 'dir' (base directory of the generated sites), 'keep' (keep the generated
+ * sites), 'fail' (exit with code 1 if any super-linear phase found), and
+ * the options of {@link SiteGenerator#configure(Map)}.
+ *
+ * @author Alex Lin
+ */
+public class ScalingHarness {
+	private static final Pattern PHASE_PATTERN = Pattern.compile("\\{\"name\": \"([^\"]+)\", \"ms\": ([0-9.]+)\\}");
+	private static final String TOTAL = "total";
+
+	private final Map<String, String> options;
+	private final double threshold;
+	private final double minMillis;
+
+	public ScalingHarness(Map<String, String> options) {
+		this.options = options;
+		this.threshold = Double.parseDouble(getOption("threshold", "1.3"));
+		this.minMillis = Double.parseDouble(getOption("min_ms", "100"));
+	}
+
+	public static void main(String[] args) throws Exception{
+		Map<String, String> options = new HashMap<String, String>();
+		for(String arg: args){
+			int index = arg.indexOf('=');
+			if(index == -1){
+				throw new IllegalArgumentException("Argument must be 'name=value': " + arg);
+			}
+			options.put(arg.substring(0, index), arg.substring(index + 1));
+		}
+
+		ScalingHarness harness = new ScalingHarness(options);
+		List<Result> results = harness.run();
+		boolean superLinear = harness.report(results);
+		System.exit(superLinear && "true".equals(options.get("fail")) ? 1 : 0);
+	}
+
+	private String getOption(String name, String defaultValue){
+		String value = options.get(name);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Generate and build the site of each size.
+	 * @return results in the order of sizes
+	 * @throws Exception
+	 */
+	public List<Result> run() throws Exception{
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(String size: StringUtils.split(getOption("sizes", "1000,10000"), ',')){
+			sizes.add(Integer.valueOf(size.trim()));
+		}
+
+		if(Boolean.parseBoolean(getOption("warmup", "true"))){
+			System.out.println("Warming up...");
+			build(Math.min(200, sizes.get(0)));
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		for(int size: sizes){
+			System.out.println("Building site of " + size + " posts...");
+			Result result = build(size);
+			System.out.println(String.format(Locale.ROOT, "  %d posts: %.0f ms, peak heap %d MB",
+					size, result.phases.get(TOTAL), result.peakHeap / (1024 * 1024)));
+			results.add(result);
+		}
+		return results;
+	}
+
+	private Result build(int posts) throws Exception{
+		SiteGenerator generator = new SiteGenerator();
+		generator.configure(options);
+		generator.setPosts(posts);
+		String dir = options.get("dir");
+		SiteFixture fixture = SiteFixture.create(generator, dir != null ? new File(dir) : null);
+		try{
+			Map<String, Object> siteOptions = new HashMap<String, Object>();
+			siteOptions.put("build_report", true);
+			if(options.get("threads") != null){
+				siteOptions.put("threads", Integer.valueOf(options.get("threads")));
+			}
+			Site site = fixture.createSite(siteOptions);
+
+			System.gc();
+			List<MemoryPoolMXBean> pools = getHeapPools();
+			for(MemoryPoolMXBean pool: pools){
+				pool.resetPeakUsage();
+			}
+
+			long start = System.nanoTime();
+			site.build();
+			long nanos = System.nanoTime() - start;
+
+			long peakHeap = 0;
+			for(MemoryPoolMXBean pool: pools){
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+
+			Result result = new Result(posts, peakHeap);
+			result.phases.putAll(readPhases(site.getWorking()));
+			result.phases.put(TOTAL, nanos / 1000000.0);
+			return result;
+		}finally{
+			if(!Boolean.parseBoolean(getOption("keep", "false"))){
+				fixture.delete();
+			}
+		}
+	}
+
+	private static List<MemoryPoolMXBean> getHeapPools(){
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()){
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	/**
+	 * Read the phase times from the build report in working directory.
+	 */
+	private static Map<String, Double> readPhases(File working) throws Exception{
+		Map<String, Double> phases = new LinkedHashMap<String, Double>();
+		File[] files = working.listFiles();
+		if(files == null){
+			return phases;
+		}
+		for(File file: files){
+			if(file.getName().endsWith("_build_report.json")){
+				String json = FileUtils.readFileToString(file, "UTF-8");
+				String section = StringUtils.substringBetween(json, "\"phases\": [", "]");
+				Matcher matcher = PHASE_PATTERN.matcher(section != null ? section : "");
+				while(matcher.find()){
+					phases.put(matcher.group(1), Double.valueOf(matcher.group(2)));
+				}
+			}
+		}
+		return phases;
+	}
+
+	/**
+	 * Print the results and the scaling exponents.
+	 * @param results
+	 * @return true if any super-linear phase found
+	 */
+	public boolean report(List<Result> results){
+		Set<String> phases = new LinkedHashSet<String>();
+		for(Result result: results){
+			phases.addAll(result.phases.keySet());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "%n%-20s", "phase (ms)"));
+		for(Result result: results){
+			sb.append(String.format(Locale.ROOT, "%12d", result.posts));
+		}
+		sb.append(String.format(Locale.ROOT, "%n"));
+		for(String phase: phases){
+			sb.append(String.format(Locale.ROOT, "%-20s", phase));
+			for(Result result: results){
+				Double ms = result.phases.get(phase);
+				sb.append(ms != null ? String.format(Locale.ROOT, "%12.1f", ms) : String.format("%12s", "-"));
+			}
+			sb.append(String.format(Locale.ROOT, "%n"));
+		}
+		sb.append(String.format(Locale.ROOT, "%-20s", "peak heap (MB)"));
+		for(Result result: results){
+			sb.append(String.format(Locale.ROOT, "%12d", result.peakHeap / (1024 * 1024)));
+		}
+		sb.append(String.format(Locale.ROOT, "%n"));
+		System.out.println(sb);
+
+		boolean superLinear = false;
+		for(int i = 1 ; i < results.size() ; i++){
+			Result r1 = results.get(i - 1);
+			Result r2 = results.get(i);
+			System.out.println(String.format(Locale.ROOT, "Scaling %d -> %d posts:", r1.posts, r2.posts));
+			for(String phase: phases){
+				Double t1 = r1.phases.get(phase);
+				Double t2 = r2.phases.get(phase);
+				if(t1 == null || t2 == null || t1 <= 0 || t2 < minMillis){
+					continue;
+				}
+				double exponent = Math.log(t2 / t1) / Math.log((double) r2.posts / r1.posts);
+				boolean flagged = exponent > threshold;
+				superLinear |= flagged;
+				System.out.println(String.format(Locale.ROOT, "  %-20s n^%.2f%s", phase, exponent,
+						flagged ? "  SUPER-LINEAR" : ""));
+			}
+		}
+		return superLinear;
+	}
+
+	/**
+	 * Result of building one site.
+	 */
+	public static class Result{
+		private final int posts;
+		private final long peakHeap;
+		private final Map<String, Double> phases = new LinkedHashMap<String, Double>();
+
+		private Result(int posts, long peakHeap) {
+			this.posts = posts;
+			this.peakHeap = peakHeap;
+		}
+
+		public int getPosts() {
+			return posts;
+		}
+
+		public long getPeakHeap() {
+			return peakHeap;
+		}
+
+		/**
+		 * @return time of each phase and the total time in milliseconds
+		 */
+		public Map<String, Double> getPhases() {
+			return phases;
+		}
+	}
+}
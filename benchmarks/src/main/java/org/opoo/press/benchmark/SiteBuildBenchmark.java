@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.Site;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of a full {@link Site#build()} of a generated site.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SiteBuildBenchmark {
+	@Param({"100", "1000"})
+	private int posts;
+
+	@Param({"1", "4"})
+	private int threads;
+
+	private SiteFixture fixture;
+	private Site site;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		fixture = SiteFixture.create(posts);
+	}
+
+	@Setup(Level.Invocation)
+	public void createSite(){
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("threads", threads);
+		site = fixture.createSite(options);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		fixture.delete();
+	}
+
+	@Benchmark
+	public Site build(){
+		site.build();
+		return site;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Application;
+import org.opoo.press.Site;
+import org.opoo.press.SiteManager;
+import org.opoo.press.impl.ContextImpl;
+
+/**
+ * A site generated by {@link SiteGenerator} in a temporary directory,
+ * used as the input of the benchmarks.
+ *
+ * @author Alex Lin
+ */
+public class SiteFixture {
+	/**
+	 * Fixed site time, so the output of every build is the same.
+	 */
+	public static final Date SITE_TIME = new Date(1400000000000L);
+
+	private final File siteDir;
+	private final Map<String, Object> siteOptions;
+
+	private SiteFixture(File siteDir, Map<String, Object> siteOptions) {
+		this.siteDir = siteDir;
+		this.siteOptions = siteOptions;
+	}
+
+	/**
+	 * Install a site with the given number of posts in a temporary directory.
+	 * @param posts
+	 * @return the fixture
+	 * @throws Exception
+	 */
+	public static SiteFixture create(int posts) throws Exception{
+		return create(new SiteGenerator(posts));
+	}
+
+	/**
+	 * Install a site generated by the generator in a temporary directory.
+	 * @param generator
+	 * @return the fixture
+	 * @throws Exception
+	 */
+	public static SiteFixture create(SiteGenerator generator) throws Exception{
+		return create(generator, null);
+	}
+
+	/**
+	 * Install a site generated by the generator in the base directory.
+	 * @param generator
+	 * @param baseDir base directory, use a temporary directory if null
+	 * @return the fixture
+	 * @throws Exception
+	 */
+	public static SiteFixture create(SiteGenerator generator, File baseDir) throws Exception{
+		File root = File.createTempFile("opoopress-bench", "", baseDir);
+		root.delete();
+		File siteDir = new File(root, "site");
+		generator.generate(siteDir);
+		return new SiteFixture(siteDir, generator.getSiteOptions());
+	}
+
+	static synchronized void initializeContext(){
+		if(!Application.isInitialized()){
+			new ContextImpl().initialize();
+		}
+	}
+
+	static SiteManager getSiteManager(){
+		return Application.getContext().getSiteManager();
+	}
+
+	/**
+	 * Create a new site instance of the fixture.
+	 * @param options extra config options, may be null
+	 * @return site
+	 */
+	public Site createSite(Map<String, Object> options){
+		Map<String, Object> extra = new HashMap<String, Object>();
+		extra.putAll(siteOptions);
+		extra.put("time", SITE_TIME);
+		if(options != null){
+			extra.putAll(options);
+		}
+		return getSiteManager().createSite(siteDir, extra);
+	}
+
+	public File getSiteDir() {
+		return siteDir;
+	}
+
+	/**
+	 * Delete the temporary directory of this fixture.
+	 */
+	public void delete(){
+		FileUtils.deleteQuietly(siteDir.getParentFile());
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates a synthetic site: installs the default site skeleton and
+ * writes posts and static assets with deterministic content.
+ *
+ * <p>The size and shape of the site are configurable: post count, tags
+ * per post, depth of the category tree, ratio of posts using the excerpt
+ * separator, code blocks per post and static asset count.
+ *
+ * @author Alex Lin
+ */
+public class SiteGenerator {
+	private int posts = 100;
+	private int tags = 100;
+	private int tagsPerPost = 3;
+	private int categoryDepth = 1;
+	private int categoryFanout = 3;
+	private double excerptRatio = 1.0;
+	private int codeBlocks = 1;
+	private int paragraphs = 5;
+	private int assets = 0;
+	private long seed = 1400000000L;
+
+	public SiteGenerator() {
+	}
+
+	public SiteGenerator(int posts) {
+		this.posts = posts;
+	}
+
+	/**
+	 * Set the properties from the options map, keys are 'posts', 'tags',
+	 * 'tags_per_post', 'category_depth', 'category_fanout', 'excerpt_ratio',
+	 * 'code_blocks', 'paragraphs', 'assets' and 'seed'.
+	 * @param options
+	 */
+	public void configure(Map<String, String> options){
+		posts = getInt(options, "posts", posts);
+		tags = getInt(options, "tags", tags);
+		tagsPerPost = getInt(options, "tags_per_post", tagsPerPost);
+		categoryDepth = getInt(options, "category_depth", categoryDepth);
+		categoryFanout = getInt(options, "category_fanout", categoryFanout);
+		codeBlocks = getInt(options, "code_blocks", codeBlocks);
+		paragraphs = getInt(options, "paragraphs", paragraphs);
+		assets = getInt(options, "assets", assets);
+		String str = options.get("excerpt_ratio");
+		if(str != null){
+			excerptRatio = Double.parseDouble(str);
+		}
+		str = options.get("seed");
+		if(str != null){
+			seed = Long.parseLong(str);
+		}
+	}
+
+	private static int getInt(Map<String, String> options, String name, int defaultValue){
+		String str = options.get(name);
+		return str != null ? Integer.parseInt(str) : defaultValue;
+	}
+
+	/**
+	 * Install the site skeleton to the directory and generate the posts
+	 * and assets.
+	 * @param siteDir the site directory, must not exist
+	 * @throws Exception
+	 */
+	public void generate(File siteDir) throws Exception{
+		SiteFixture.initializeContext();
+		SiteFixture.getSiteManager().install(siteDir, Locale.US, false);
+
+		Random random = new Random(seed);
+		List<String> categories = getCategoryPaths();
+		for(int i = 0 ; i < posts ; i++){
+			writePost(siteDir, i, categories, random);
+		}
+		for(int i = 0 ; i < assets ; i++){
+			writeAsset(siteDir, i, random);
+		}
+	}
+
+	/**
+	 * The category tree, must be passed to the site as the 'category_names'
+	 * option.
+	 * @return category names, keyed by category path
+	 */
+	public Map<String, Object> getSiteOptions(){
+		Map<String, String> names = new LinkedHashMap<String, String>();
+		List<String> parents = new ArrayList<String>();
+		parents.add(null);
+		for(int depth = 0 ; depth < categoryDepth ; depth++){
+			List<String> children = new ArrayList<String>();
+			for(String parent: parents){
+				for(int i = 0 ; i < categoryFanout ; i++){
+					String nicename = "c" + depth + i;
+					String path = parent == null ? nicename : parent + "." + nicename;
+					names.put(path, "Category " + path);
+					children.add(path);
+				}
+			}
+			parents = children;
+		}
+
+		Map<String, Object> options = new LinkedHashMap<String, Object>();
+		if(!names.isEmpty()){
+			options.put("category_names", names);
+		}
+		return options;
+	}
+
+	/**
+	 * @return paths of the leaf categories
+	 */
+	private List<String> getCategoryPaths(){
+		List<String> paths = new ArrayList<String>();
+		@SuppressWarnings("unchecked")
+		Map<String, String> names = (Map<String, String>) getSiteOptions().get("category_names");
+		if(names != null){
+			for(String path: names.keySet()){
+				if(path.split("\\.").length == categoryDepth){
+					paths.add(path);
+				}
+			}
+		}
+		return paths;
+	}
+
+	private void writePost(File siteDir, int i, List<String> categories, Random random) throws IOException{
+		int year = 2000 + (i / 336) % 15;
+		int month = 1 + (i / 28) % 12;
+		int day = 1 + i % 28;
+		String name = String.format("source/article/%d-%02d-%02d-post-%d.markdown", year, month, day, i);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("---\n");
+		sb.append("layout: post\n");
+		sb.append("title: \"Generated Post ").append(i).append("\"\n");
+		sb.append(String.format("date: %d-%02d-%02d %02d:%02d\n", year, month, day, i % 24, i % 60));
+		sb.append("comments: true\n");
+		if(!categories.isEmpty()){
+			sb.append("categories: [").append(categories.get(random.nextInt(categories.size()))).append("]\n");
+		}
+		if(tagsPerPost > 0 && tags > 0){
+			Set<String> postTags = new LinkedHashSet<String>();
+			while(postTags.size() < Math.min(tagsPerPost, tags)){
+				postTags.add("tag" + random.nextInt(tags));
+			}
+			sb.append("tags: [");
+			String sep = "";
+			for(String tag: postTags){
+				sb.append(sep).append(tag);
+				sep = ", ";
+			}
+			sb.append("]\n");
+		}
+		sb.append("---\n\n");
+		sb.append(postBody(i, random.nextDouble() < excerptRatio));
+		FileUtils.write(new File(siteDir, name), sb.toString(), "UTF-8");
+	}
+
+	/**
+	 * Markdown body of the post.
+	 * @param i post index
+	 * @param excerpt whether add the excerpt separator
+	 * @return post content
+	 */
+	public String postBody(int i, boolean excerpt){
+		StringBuilder sb = new StringBuilder();
+		sb.append("Lorem *ipsum* dolor sit amet, consectetur adipiscing elit ").append(i).append(".\n\n");
+		if(excerpt){
+			sb.append("<!--more-->\n\n");
+		}
+		for(int p = 0 ; p < paragraphs ; p++){
+			sb.append("## Section ").append(p).append("\n\n");
+			sb.append("Sed ut perspiciatis unde omnis iste natus error sit voluptatem accusantium ")
+				.append("doloremque laudantium, totam rem aperiam, [eaque ipsa](http://example.com/")
+				.append(p).append(") quae ab illo inventore veritatis.\n\n");
+			sb.append("* item one\n* item **two**\n* item three\n\n");
+		}
+		for(int c = 0 ; c < codeBlocks ; c++){
+			sb.append("```java\npublic int sum").append(c).append("(int a, int b){\n    return a + b;\n}\n```\n\n");
+		}
+		return sb.toString();
+	}
+
+	private void writeAsset(File siteDir, int i, Random random) throws IOException{
+		byte[] bytes = new byte[1024 + random.nextInt(8 * 1024)];
+		random.nextBytes(bytes);
+		File file = new File(siteDir, String.format("source/generated/%03d/asset-%d.png", i / 100, i));
+		FileUtils.writeByteArrayToFile(file, bytes);
+	}
+
+	public int getPosts() {
+		return posts;
+	}
+
+	public void setPosts(int posts) {
+		this.posts = posts;
+	}
+
+	public void setTags(int tags) {
+		this.tags = tags;
+	}
+
+	public void setTagsPerPost(int tagsPerPost) {
+		this.tagsPerPost = tagsPerPost;
+	}
+
+	public void setCategoryDepth(int categoryDepth) {
+		this.categoryDepth = categoryDepth;
+	}
+
+	public void setCategoryFanout(int categoryFanout) {
+		this.categoryFanout = categoryFanout;
+	}
+
+	public void setExcerptRatio(double excerptRatio) {
+		this.excerptRatio = excerptRatio;
+	}
+
+	public void setCodeBlocks(int codeBlocks) {
+		this.codeBlocks = codeBlocks;
+	}
+
+	public void setParagraphs(int paragraphs) {
+		this.paragraphs = paragraphs;
+	}
+
+	public void setAssets(int assets) {
+		this.assets = assets;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
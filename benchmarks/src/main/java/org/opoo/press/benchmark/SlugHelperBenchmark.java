@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.slug.ChineseToPinyinSlugHelper;
+import org.opoo.press.slug.DefaultSlugHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the slug helpers, used for the names of categories, tags
+ * and new posts.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlugHelperBenchmark {
+	private final DefaultSlugHelper defaultSlugHelper = new DefaultSlugHelper();
+	private final ChineseToPinyinSlugHelper chineseToPinyinSlugHelper = new ChineseToPinyinSlugHelper();
+	private String englishTitle = "Hello World: A Static Site Generator, Written in Java!";
+	private String chineseTitle = "你好世界 OpooPress 博客框架";
+
+	@Benchmark
+	public String defaultSlug(){
+		return defaultSlugHelper.toSlug(englishTitle);
+	}
+
+	@Benchmark
+	public String chineseToPinyinSlug(){
+		return chineseToPinyinSlugHelper.toSlug(chineseTitle);
+	}
+}
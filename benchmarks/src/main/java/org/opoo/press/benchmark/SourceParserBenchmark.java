@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.opoo.press.source.NoFrontMatterException;
+import org.opoo.press.source.Source;
+import org.opoo.press.source.SourceEntry;
+import org.opoo.press.source.impl.SourceParserImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link SourceParserImpl#parse(SourceEntry)}: read a post
+ * file, split the front-matter and parse the YAML.
+ *
+ * @author Alex Lin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceParserBenchmark {
+	private SiteFixture fixture;
+	private SourceParserImpl parser;
+	private SourceEntry entry;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		fixture = SiteFixture.create(1);
+		parser = new SourceParserImpl();
+		File file = new File(fixture.getSiteDir(), "source/article/2000-01-01-post-0.markdown");
+		entry = new SourceEntry(file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		fixture.delete();
+	}
+
+	@Benchmark
+	public Source parse() throws NoFrontMatterException{
+		return parser.parse(entry);
+	}
+}
@@ -20,6 +20,7 @@ import java.io.StringWriter;
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.mylyn.wikitext.core.parser.MarkupParser;
 import org.eclipse.mylyn.wikitext.core.parser.builder.HtmlDocumentBuilder;
+import org.eclipse.mylyn.wikitext.core.parser.markup.MarkupLanguage;
 import org.opoo.press.Converter;
 import org.opoo.press.source.Source;
 
@@ -34,6 +35,13 @@ import org.opoo.press.source.Source;
  *
  */
 public abstract class AbstractWikiTextConverter implements Converter{
+	private final ThreadLocal<MarkupParser> parsers = new ThreadLocal<MarkupParser>(){
+		@Override
+		protected MarkupParser initialValue() {
+			return new MarkupParser(createMarkupLanguage());
+		}
+	};
+	
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Converter#convert(java.lang.String)
 	 */
@@ -62,10 +70,24 @@ public abstract class AbstractWikiTextConverter implements Converter{
 //	}
 	
 	/**
-	 * Return the MarkupParser instance.
+	 * Return the MarkupParser instance of current thread, MarkupParser
+	 * is not thread safe.
 	 * @return MarkupParser for this converter.
 	 */
-	protected abstract MarkupParser getMarkupParser();
+	protected MarkupParser getMarkupParser(){
+		return parsers.get();
+	}
+	
+	/**
+	 * Create the markup language for the parser of each thread. Subclasses
+	 * should override this method, or override {@link #getMarkupParser()}
+	 * as in previous versions and take care of thread safety themselves.
+	 * @return a new markup language instance
+	 */
+	protected MarkupLanguage createMarkupLanguage(){
+		throw new UnsupportedOperationException(getClass().getName()
+				+ " must override createMarkupLanguage() or getMarkupParser()");
+	}
 	
 
 	/* (non-Javadoc)
@@ -30,7 +30,13 @@ import org.opoo.press.source.Source;
  *
  */
 public class TextilejConverter implements Converter {
-	private MarkupParser parser = new MarkupParser(new TextileDialect());
+	//MarkupParser is not thread safe, one parser for each thread
+	private final ThreadLocal<MarkupParser> parsers = new ThreadLocal<MarkupParser>(){
+		@Override
+		protected MarkupParser initialValue() {
+			return new MarkupParser(new TextileDialect());
+		}
+	};
 	
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Ordered#getOrder()
@@ -48,6 +54,7 @@ public class TextilejConverter implements Converter {
 		StringWriter writer = new StringWriter();
 		HtmlDocumentBuilder builder = new HtmlDocumentBuilder(writer);
 		builder.setEmitAsDocument(false);
+		MarkupParser parser = parsers.get();
 		parser.setBuilder(builder);
 		
 		parser.parse(content);
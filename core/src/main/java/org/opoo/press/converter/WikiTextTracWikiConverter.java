@@ -15,7 +15,7 @@
  */
 package org.opoo.press.converter;
 
-import org.eclipse.mylyn.wikitext.core.parser.MarkupParser;
+import org.eclipse.mylyn.wikitext.core.parser.markup.MarkupLanguage;
 import org.eclipse.mylyn.wikitext.tracwiki.core.TracWikiLanguage;
 
 /**
@@ -23,7 +23,6 @@ import org.eclipse.mylyn.wikitext.tracwiki.core.TracWikiLanguage;
  * @author Alex Lin
  */
 public class WikiTextTracWikiConverter extends AbstractWikiTextConverter {
-	private MarkupParser parser = new MarkupParser(new TracWikiLanguage());
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Ordered#getOrder()
 	 */
@@ -33,11 +32,11 @@ public class WikiTextTracWikiConverter extends AbstractWikiTextConverter {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.opoo.press.converter.AbstractWikiTextConverter#getMarkupParser()
+	 * @see org.opoo.press.converter.AbstractWikiTextConverter#createMarkupLanguage()
 	 */
 	@Override
-	protected MarkupParser getMarkupParser() {
-		return parser;
+	protected MarkupLanguage createMarkupLanguage() {
+		return new TracWikiLanguage();
 	}
 
 	/* (non-Javadoc)
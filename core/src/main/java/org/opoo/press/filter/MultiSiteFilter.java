@@ -15,6 +15,7 @@
  */
 package org.opoo.press.filter;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,10 +33,36 @@ public class MultiSiteFilter implements SiteFilter {
 	private List<SiteFilter> filters;
 	
 	public MultiSiteFilter(List<SiteFilter> filters){
-		this.filters = filters;
+		if(filters != null){
+			//sort a copy, the filter list may be shared by build threads
+			this.filters = new ArrayList<SiteFilter>(filters);
+			Collections.sort(this.filters, Ordered.COMPARATOR);
+		}
+	}
+
+	/**
+	 * Whether the method of any filter does something, the empty methods
+	 * of {@link SiteFilterAdapter} are ignored.
+	 * @param name method name
+	 * @param parameterTypes
+	 * @return false if no filter implements the method
+	 */
+	public boolean isImplemented(String name, Class<?>... parameterTypes){
 		if(this.filters != null){
-			Collections.sort(filters, Ordered.COMPARATOR);
+			for(SiteFilter f : filters){
+				if(!(f instanceof SiteFilterAdapter)){
+					return true;
+				}
+				try {
+					if(f.getClass().getMethod(name, parameterTypes).getDeclaringClass() != SiteFilterAdapter.class){
+						return true;
+					}
+				} catch (NoSuchMethodException e) {
+					throw new IllegalArgumentException(e);
+				}
+			}
 		}
+		return false;
 	}
 
 	/* (non-Javadoc)
@@ -18,7 +18,6 @@ package org.opoo.press.generator;
 import java.io.File;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -89,12 +88,9 @@ public class CategoryGenerator implements Generator {
 		}
 
 		@Override
-		public void render(Map<String, Object> rootMap) {
-			rootMap = new HashMap<String,Object>(rootMap);
+		protected String prepareRender(Map<String, Object> rootMap) {
 			mergeRootMap(rootMap);
-
-			String output = getRenderer().render(TEMPLATE, rootMap);
-			setContent(output);
+			return TEMPLATE;
 		}
 
 		public String getUrl() {
@@ -208,6 +204,14 @@ public class CategoryGenerator implements Generator {
 			return ".html";
 		}
 
+		/* (non-Javadoc)
+		 * @see org.opoo.press.impl.AbstractConvertible#getSite()
+		 */
+		@Override
+		public Site getSite() {
+			return site;
+		}
+
 		/* (non-Javadoc)
 		 * @see org.opoo.press.impl.AbstractConvertible#getRenderer()
 		 */
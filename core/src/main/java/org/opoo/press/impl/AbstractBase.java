@@ -16,17 +16,13 @@
 package org.opoo.press.impl;
 
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
-import org.apache.commons.lang.RandomStringUtils;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opoo.press.Base;
@@ -36,6 +32,8 @@ import org.opoo.press.Site;
 import org.opoo.press.highlighter.Highlighter;
 import org.opoo.press.source.Source;
 import org.opoo.press.source.SourceEntry;
+import org.opoo.press.util.ContentStore;
+import org.opoo.press.util.DateUtils;
 import org.opoo.util.MapUtils;
 
 /**
@@ -45,8 +43,6 @@ import org.opoo.util.MapUtils;
 public abstract class AbstractBase extends AbstractConvertible implements Base{
 	protected Logger log = LoggerFactory.getLogger(getClass());
 	
-	private DateFormat f1 = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-	private DateFormat f2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 	private final Map<String, Object> data;
 	
 	private Source source;
@@ -65,8 +61,10 @@ public abstract class AbstractBase extends AbstractConvertible implements Base{
 	private String outputFileExtension;
 	private Converter converter;
 
-	private Cache contentCache;
-	private String cacheKey;
+	private ContentStore contentStore;
+	private ConversionCache conversionCache;
+	private volatile File releasedOutputFile;
+	private volatile boolean contentLoaded;
 	
 	AbstractBase(Site site, Source source){
 		this.source = source;
@@ -93,12 +91,10 @@ public abstract class AbstractBase extends AbstractConvertible implements Base{
 		this.converter = site.getConverter(source);
 		this.outputFileExtension = this.converter.getOutputFileExtension(source);
 
-		CacheManager cacheManager = (CacheManager) site.get("cacheManager");
-		if(cacheManager != null){
-			this.contentCache = cacheManager.getCache("contentCache");
-		}
+		this.contentStore = (ContentStore) site.get("contentStore");
+		this.conversionCache = (ConversionCache) site.get("conversionCache");
 		//this.content = source.getContent();
-		setContent(source.getContent());
+		//content is loaded from source when required, see getContent()
 
 		this.layout = (String) source.getMeta().get("layout");
 		this.permalink = (String) source.getMeta().get("permalink");
@@ -130,14 +126,7 @@ public abstract class AbstractBase extends AbstractConvertible implements Base{
 	}
 	
 	private String formatDate(Date date, String style){
-		if(date != null){
-			if(site.getLocale() != null){
-				return new SimpleDateFormat(style, site.getLocale()).format(date);
-			}else{
-				return new SimpleDateFormat(style).format(date);
-			}
-		}
-		return null;
+		return DateUtils.format(date, style, site.getLocale());
 	}
 	
 	private Date lookup(Map<String, Object> frontMatter, String dateName){
@@ -145,18 +134,7 @@ public abstract class AbstractBase extends AbstractConvertible implements Base{
 		if(date != null && !(date instanceof Date)){
 			String string = date.toString();
 			//try parse from yyyy-MM-dd HH:mm
-			try {
-				date = f1.parse(string);
-			} catch (ParseException e) {
-				//ignore
-			}
-			if(date == null){
-				try {
-					date = f2.parse(string);
-				} catch (ParseException e) {
-					//ignore
-				}
-			}
+			date = DateUtils.parse(string, "yyyy-MM-dd HH:mm", "yyyy-MM-dd HH:mm:ss");
 //			if(date == null){
 //				frontMatter.remove(dateName);
 //			}else{
@@ -193,35 +171,65 @@ public abstract class AbstractBase extends AbstractConvertible implements Base{
 	 * @return the content
 	 */
 	public String getContent() {
-		if(contentCache == null) {
+		File file = releasedOutputFile;
+		if(file != null){
+			return readReleasedContent(file);
+		}
+		if(!contentLoaded){
+			//read the source once, kept until replaced by the converted content
+			String content = source.getContent();
+			setContent(content);
 			return content;
-		}else{
-			String key = buildCacheKey();
-			Element e = contentCache.get(key);
-			return e != null ? (String)e.getObjectValue() : null;
 		}
+		return contentStore != null ? contentStore.get(this) : content;
 	}
 	public void setContent(String content){
-		if(contentCache == null) {
+		releasedOutputFile = null;
+		contentLoaded = true;
+		if(contentStore == null) {
 			this.content = content;
 		}else{
-			String key = buildCacheKey();
-			contentCache.put(new Element(key, content));
+			contentStore.put(this, content);
 		}
 	}
 
-	private synchronized String buildCacheKey() {
-		if(cacheKey == null) {
-			cacheKey = "content-" + hashCode() + "-" + RandomStringUtils.randomAlphanumeric(13);
-			log.debug("The cache key: {}", cacheKey);
+	/**
+	 * Release the rendered content after it has been written to the
+	 * destination directory. Content will be read back from the output
+	 * file if required again.
+	 * @param dest
+	 */
+	void releaseContent(File dest){
+		if(contentStore == null){
+			content = null;
+		}else{
+			contentStore.remove(this);
+		}
+		releasedOutputFile = getOutputFile(dest);
+	}
+
+	private String readReleasedContent(File file){
+		try {
+			return FileUtils.readFileToString(file, "UTF-8");
+		} catch (IOException e) {
+			throw new RuntimeException("Read released content error: " + file, e);
 		}
-		return cacheKey;
 	}
 
 	public void convert(){
 		log.debug("Convert content for '{}'", getUrl());
 		//this.content = this.converter.convert(content);
-		setContent(converter.convert(getContent()));
+		setContent(convertContent(getContent()));
+	}
+
+	/**
+	 * Convert the content by the converter, use the converted content
+	 * of last build if conversion cache enabled.
+	 * @param content
+	 * @return converted content
+	 */
+	protected String convertContent(String content){
+		return conversionCache != null ? conversionCache.convert(converter, content) : converter.convert(content);
 	}
 	
 	protected void mergeRootMap(Map<String,Object> rootMap){
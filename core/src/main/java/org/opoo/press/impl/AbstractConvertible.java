@@ -17,14 +17,16 @@ package org.opoo.press.impl;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opoo.press.Convertible;
 import org.opoo.press.Renderer;
+import org.opoo.press.Site;
 import org.opoo.press.source.Source;
 
 /**
@@ -32,6 +34,7 @@ import org.opoo.press.source.Source;
  *
  */
 public abstract class AbstractConvertible implements Convertible {
+	private static final ConcurrentMap<Class<?>, Boolean> RENDER_AND_WRITE_SUPPORTED = new ConcurrentHashMap<Class<?>, Boolean>();
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	
 	public abstract String getUrl();
@@ -52,6 +55,23 @@ public abstract class AbstractConvertible implements Convertible {
 
 	public abstract Source getSource();
 	
+	/**
+	 * The site of this convertible, subclasses should override it.
+	 * @return the site of renderer, or null if unknown
+	 */
+	public Site getSite(){
+		Renderer renderer = getRenderer();
+		return renderer instanceof RendererImpl ? ((RendererImpl) renderer).getSite() : null;
+	}
+	
+	/**
+	 * @return the output manifest if skipping unchanged output enabled, or null
+	 */
+	private OutputManifest getOutputManifest(){
+		Site site = getSite();
+		return site != null ? (OutputManifest) site.get("outputManifest") : null;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Convertible#render(java.util.Map)
 	 */
@@ -60,6 +80,84 @@ public abstract class AbstractConvertible implements Convertible {
 		//comment this, call convert() separately.
 		//convert();
 		
+		rootMap = RenderContext.newScope(rootMap);
+		String name = prepareRender(rootMap);
+		if(name != null){
+			String output = getRenderer().render(name, rootMap);
+//			String output = getRenderer().render(getLayout(), getContent(), getSource().getSourceEntry(), rootMap);
+			setContent(output);
+		}
+	}
+	
+	/**
+	 * Render to the output file directly without keeping the rendered
+	 * content, used when no filter requires the rendered content. The
+	 * content is not changed.
+	 * @param rootMap
+	 * @param dest
+	 */
+	void renderAndWrite(Map<String, Object> rootMap, File dest) {
+		rootMap = RenderContext.newScope(rootMap);
+		String name = prepareRender(rootMap);
+		if(name == null){
+			write(dest);
+			return;
+		}
+		
+		File file = getOutputFile(dest);
+		OutputFileWriter out = null;
+		try {
+			out = OutputFileWriter.open(file);
+			getRenderer().render(name, rootMap, out);
+			if(out.commit(getOutputManifest())){
+				log.debug("Writing file '{}' to {}", getUrl(), file);
+			}else{
+				log.debug("Output file not changed, skip writing: {}", file);
+			}
+		} catch (IOException e) {
+			log.error("Write file error: " + file, e);
+			throw new RuntimeException(e);
+		}finally{
+			if(out != null){
+				out.abort();
+			}
+		}
+	}
+	
+	/**
+	 * Whether the subclass overrides {@link #render(Map)} but not
+	 * {@link #renderAndWrite(Map, File)}.
+	 */
+	boolean isRenderAndWriteSupported(){
+		Class<?> clazz = getClass();
+		Boolean supported = RENDER_AND_WRITE_SUPPORTED.get(clazz);
+		if(supported == null){
+			Class<?> render = getDeclaringClass(clazz, "render", Map.class);
+			Class<?> renderAndWrite = getDeclaringClass(clazz, "renderAndWrite", Map.class, File.class);
+			supported = render.isAssignableFrom(renderAndWrite);
+			RENDER_AND_WRITE_SUPPORTED.put(clazz, supported);
+		}
+		return supported;
+	}
+	
+	private static Class<?> getDeclaringClass(Class<?> clazz, String name, Class<?>... parameterTypes){
+		for(Class<?> c = clazz; c != null; c = c.getSuperclass()){
+			try {
+				c.getDeclaredMethod(name, parameterTypes);
+				return c;
+			} catch (NoSuchMethodException e) {
+				//try super class
+			}
+		}
+		throw new IllegalArgumentException("No method: " + name);
+	}
+	
+	/**
+	 * Prepare the template and root map for rendering.
+	 * @param rootMap the root map copy of this convertible
+	 * @return template name, or null if no layout and the content is plain text
+	 */
+	protected String prepareRender(Map<String, Object> rootMap) {
 		Renderer renderer = getRenderer();
 		boolean isContentRenderRequired = renderer.isRenderRequired(getContent());
 		boolean isValidLayout = renderer.isValidLayout(getLayout());
@@ -69,25 +167,21 @@ public abstract class AbstractConvertible implements Convertible {
 					+ getSource().getSourceEntry().getFile());
 			//output = content;
 			//do nothing
-			return;
+			return null;
 		}
 
 		log.debug("Rendering '{}'", getUrl());
 		
-		rootMap = new HashMap<String,Object>(rootMap);
 		mergeRootMap(rootMap);
 		//if content is plain text
 		if(!isContentRenderRequired){
 			rootMap.put("content", getContent());
 		}
 		
-		String name = isContentRenderRequired ? renderer.prepareWorkingTemplate(getLayout(), isValidLayout, 
+		return isContentRenderRequired ? renderer.prepareWorkingTemplate(getLayout(), isValidLayout, 
 				getContent(), isContentRenderRequired, 
 				getSource().getSourceEntry()) 
 				: renderer.getLayoutWorkingTemplate(getLayout());
-		String output = renderer.render(name, rootMap);
-//		String output = getRenderer().render(getLayout(), getContent(), getSource().getSourceEntry(), rootMap);
-		setContent(output);
 	}
 
 	protected String getUrlForOutputFile(){
@@ -124,8 +218,18 @@ public abstract class AbstractConvertible implements Convertible {
 //			IOUtils.write(getContent(), fw);
 //			fw.flush();
 			
-			log.debug("Writing file '{}' to {}", getUrl(), file);
-			FileUtils.write(file, getContent(), "UTF-8");
+			byte[] bytes = getContent().getBytes("UTF-8");
+			OutputManifest manifest = getOutputManifest();
+			if(manifest != null){
+				if(manifest.write(file, bytes)){
+					log.debug("Writing file '{}' to {}", getUrl(), file);
+				}else{
+					log.debug("Output file not changed, skip writing: {}", file);
+				}
+			}else{
+				log.debug("Writing file '{}' to {}", getUrl(), file);
+				FileUtils.writeByteArrayToFile(file, bytes);
+			}
 		} catch (IOException e) {
 			log.error("Write file error: " + file, e);
 			throw new RuntimeException(e);
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.Base;
+import org.opoo.press.Category;
+import org.opoo.press.Page;
+import org.opoo.press.Post;
+import org.opoo.press.Tag;
+import org.opoo.press.source.Source;
+import org.opoo.press.source.SourceEntry;
+import org.opoo.press.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The dependency graph of the last build: which source, layout, converter
+ * and taxonomies every output page was produced from.
+ *
+ * @author Alex Lin
+ * @see BuildPlan
+ */
+class BuildGraph implements Serializable{
+	private static final long serialVersionUID = -2389212542017011296L;
+	private static final Logger log = LoggerFactory.getLogger(BuildGraph.class);
+
+	private final long buildTime;
+	private final boolean showDrafts;
+	private final String fingerprint;
+	private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+	private BuildGraph(long buildTime, boolean showDrafts, String fingerprint) {
+		this.buildTime = buildTime;
+		this.showDrafts = showDrafts;
+		this.fingerprint = fingerprint;
+	}
+
+	static BuildGraph create(SiteImpl site, long buildTime){
+		BuildGraph graph = new BuildGraph(buildTime, site.showDrafts(), site.getBuildFingerprint());
+		for(Post post: site.getPosts()){
+			List<String> taxonomies = new ArrayList<String>();
+			for(Category category: post.getCategories()){
+				taxonomies.add(category.getUrl());
+			}
+			for(Tag tag: post.getTags()){
+				taxonomies.add(tag.getUrl());
+			}
+			graph.add(new Node(site, post, true, taxonomies, post.getExcerpt()));
+		}
+		for(Page page: site.getPages()){
+			graph.add(new Node(site, page, false, null, null));
+		}
+		return graph;
+	}
+
+	private void add(Node node){
+		nodes.put(node.url, node);
+	}
+
+	Node get(String url){
+		return nodes.get(url);
+	}
+
+	Collection<Node> getNodes(){
+		return nodes.values();
+	}
+
+	long getBuildTime() {
+		return buildTime;
+	}
+
+	boolean showDrafts() {
+		return showDrafts;
+	}
+
+	/**
+	 * @return the build fingerprint of the last build
+	 * @see SiteImpl#getBuildFingerprint()
+	 */
+	String getFingerprint() {
+		return fingerprint;
+	}
+
+	static BuildGraph load(File file){
+		if(!file.exists() || !file.isFile() || !file.canRead()){
+			log.debug("No build graph file.");
+			return null;
+		}
+		ObjectInputStream stream = null;
+		try {
+			stream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return (BuildGraph) stream.readObject();
+		} catch (Exception e) {
+			//incompatible or broken file, just rebuild all
+			log.warn("Read build graph failed: " + file, e);
+			return null;
+		} finally{
+			IOUtils.closeQuietly(stream);
+		}
+	}
+
+	void save(File file){
+		File dir = file.getParentFile();
+		if(!dir.exists()){
+			dir.mkdirs();
+		}
+		ObjectOutputStream stream = null;
+		try {
+			stream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			stream.writeObject(this);
+		} catch (IOException e) {
+			throw new RuntimeException("Write build graph exception", e);
+		} finally{
+			IOUtils.closeQuietly(stream);
+		}
+	}
+
+	static String digestMeta(Source source){
+		return source == null ? null : DigestUtils.md5Hex(String.valueOf(source.getMeta()));
+	}
+
+	static class Node implements Serializable{
+		private static final long serialVersionUID = 4861402915826839025L;
+
+		private final String url;
+		private final boolean post;
+		private final String sourceFile;
+		private final long sourceLastModified;
+		private final long sourceLength;
+		private final String metaDigest;
+		private final String layout;
+		private final String converter;
+		private final List<String> taxonomies;
+		private final String excerpt;
+
+		private Node(SiteImpl site, Base base, boolean post, List<String> taxonomies, String excerpt){
+			this.url = base.getUrl();
+			this.post = post;
+			this.layout = base.getLayout();
+			this.taxonomies = taxonomies;
+			this.excerpt = excerpt;
+
+			Source source = base.getSource();
+			if(source != null){
+				SourceEntry entry = source.getSourceEntry();
+				this.sourceFile = entry.getFile().getPath();
+				this.sourceLastModified = entry.getLastModified();
+				this.sourceLength = entry.getLength();
+				this.metaDigest = digestMeta(source);
+				this.converter = site.getConverter(source).getClass().getName();
+			}else{
+				this.sourceFile = null;
+				this.sourceLastModified = 0;
+				this.sourceLength = 0;
+				this.metaDigest = null;
+				this.converter = null;
+			}
+		}
+
+		boolean isPost(){
+			return post;
+		}
+
+		String getMetaDigest(){
+			return metaDigest;
+		}
+
+		List<String> getTaxonomies(){
+			return taxonomies;
+		}
+
+		String getExcerpt(){
+			return excerpt;
+		}
+
+		/**
+		 * Whether the specified base is produced by the same source file, layout
+		 * and converter as this node.
+		 * @param site
+		 * @param base
+		 * @return true if the output of base can be reused
+		 */
+		boolean isSameAs(SiteImpl site, Base base){
+			if(!equals(layout, base.getLayout())){
+				return false;
+			}
+			Source source = base.getSource();
+			if(source == null){
+				return sourceFile == null;
+			}
+			SourceEntry entry = source.getSourceEntry();
+			return entry.getFile().getPath().equals(sourceFile)
+					&& entry.getLastModified() == sourceLastModified
+					&& entry.getLength() == sourceLength
+					&& site.getConverter(source).getClass().getName().equals(converter);
+		}
+
+		private static boolean equals(String a, String b){
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
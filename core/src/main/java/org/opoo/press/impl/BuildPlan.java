@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Base;
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Post;
+import org.opoo.press.Renderer;
+import org.opoo.press.util.StaleUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which posts and pages have to be rendered and written again,
+ * by comparing the current site with the {@link BuildGraph} of the last build.
+ *
+ * <p>Any change that might affect all pages (config, plugins, templates,
+ * drafts option, post list, post front-matter) or a missing destination
+ * directory makes a full build. A post or page whose output file is missing
+ * is rendered again. A content only change of a post marks the post itself,
+ * the paginated pages and the category/tag pages listing it, and the pages
+ * iterating 'site.posts' as dirty. If any template iterates 'site.posts',
+ * such as the recent posts aside, all pages rendered with a layout or a
+ * template are dirty too, the includes of a template can not be resolved
+ * before rendering.
+ *
+ * @author Alex Lin
+ */
+class BuildPlan {
+	private static final Logger log = LoggerFactory.getLogger(BuildPlan.class);
+
+	private final boolean fullBuild;
+	private final Set<Base> dirty = new HashSet<Base>();
+
+	private BuildPlan(boolean fullBuild) {
+		this.fullBuild = fullBuild;
+	}
+
+	static BuildPlan create(SiteImpl site, BuildGraph graph){
+		String reason = checkFullBuild(site, graph);
+		if(reason != null){
+			log.info("Full build: {}", reason);
+			return new BuildPlan(true);
+		}
+
+		BuildPlan plan = new BuildPlan(false);
+		Set<Post> dirtyPosts = new HashSet<Post>();
+		Set<String> dirtyTaxonomies = new HashSet<String>();
+
+		File dest = site.getDestination();
+		for(Post post: site.getPosts()){
+			BuildGraph.Node node = graph.get(post.getUrl());
+			if(!node.isSameAs(site, post)){
+				plan.dirty.add(post);
+				dirtyPosts.add(post);
+				dirtyTaxonomies.addAll(node.getTaxonomies());
+			}else if(!post.getOutputFile(dest).isFile()){
+				//output deleted, the post itself only
+				plan.dirty.add(post);
+			}else if(post instanceof PostImpl){
+				((PostImpl) post).restoreExcerpt(node.getExcerpt());
+			}
+		}
+
+		boolean templatesListingPosts = !dirtyPosts.isEmpty() && isListingPosts(site.getTemplates());
+		Renderer renderer = site.getRenderer();
+		for(Page page: site.getPages()){
+			BuildGraph.Node node = graph.get(page.getUrl());
+			if(node == null || node.isPost() || !node.isSameAs(site, page)
+					|| (page.getSource() != null && !BuildGraph.digestMeta(page.getSource()).equals(node.getMetaDigest()))
+					|| (templatesListingPosts && isRenderedByTemplates(page, renderer))
+					|| (!dirtyPosts.isEmpty() && isListingPosts(page, dirtyPosts, dirtyTaxonomies))
+					|| !page.getOutputFile(dest).isFile()){
+				plan.dirty.add(page);
+			}
+		}
+
+		int dirtyPages = plan.filter(site.getPages()).size();
+		log.info("Incremental build: {}/{} posts and {}/{} pages changed.",
+				plan.dirty.size() - dirtyPages, site.getPosts().size(),
+				dirtyPages, site.getPages().size());
+		return plan;
+	}
+
+	private static String checkFullBuild(SiteImpl site, BuildGraph graph){
+		if(graph == null){
+			return "no previous build graph";
+		}
+		if(graph.showDrafts() != site.showDrafts()){
+			return "show_drafts option changed";
+		}
+		if(!site.getBuildFingerprint().equals(graph.getFingerprint())){
+			return "config or plugins changed";
+		}
+		if(!site.getDestination().isDirectory()){
+			return "destination directory not found";
+		}
+		long buildTime = graph.getBuildTime();
+		File configFile = site.getConfig().getConfigFile();
+		if(configFile != null && configFile.lastModified() > buildTime){
+			return "config file changed";
+		}
+		if(StaleUtils.isNewer(site.getTemplates(), buildTime, null)){
+			return "templates changed";
+		}
+
+		int count = 0;
+		for(BuildGraph.Node node: graph.getNodes()){
+			if(node.isPost()){
+				count++;
+			}
+		}
+		if(count != site.getPosts().size()){
+			return "posts added or removed";
+		}
+
+		for(Post post: site.getPosts()){
+			BuildGraph.Node node = graph.get(post.getUrl());
+			if(node == null || !node.isPost()){
+				return "post url changed: " + post.getUrl();
+			}
+			if(!BuildGraph.digestMeta(post.getSource()).equals(node.getMetaDigest())){
+				return "front-matter changed: " + post.getUrl();
+			}
+		}
+		return null;
+	}
+
+	private static boolean isListingPosts(Page page, Set<Post> dirtyPosts, Set<String> dirtyTaxonomies){
+		Pager pager = page.getPager();
+		if(pager != null && pager.getPosts() != null){
+			for(Post post: pager.getPosts()){
+				if(dirtyPosts.contains(post)){
+					return true;
+				}
+			}
+		}
+		if(page.getSource() == null){
+			//generated category/tag page
+			return dirtyTaxonomies.contains(page.getUrl());
+		}
+		String content = page.getContent();
+		return content != null && content.contains("site.posts");
+	}
+
+	/**
+	 * The page is rendered with a layout or a template which may include
+	 * other templates, such as the generated category/tag pages.
+	 */
+	private static boolean isRenderedByTemplates(Page page, Renderer renderer){
+		return page.getSource() == null || renderer.isValidLayout(page.getLayout())
+				|| renderer.isRenderRequired(page.getContent());
+	}
+
+	/**
+	 * @param templates the templates directory
+	 * @return true if any template references 'site.posts'
+	 */
+	private static boolean isListingPosts(File templates){
+		if(templates == null || !templates.isDirectory()){
+			return false;
+		}
+		Collection<File> files = FileUtils.listFiles(templates, new String[]{"ftl"}, true);
+		for(File file: files){
+			try {
+				if(FileUtils.readFileToString(file, "UTF-8").contains("site.posts")){
+					log.debug("Template lists posts: {}", file);
+					return true;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Read template error: " + file, e);
+			}
+		}
+		return false;
+	}
+
+	boolean isFullBuild(){
+		return fullBuild;
+	}
+
+	boolean isDirty(Base base){
+		return fullBuild || dirty.contains(base);
+	}
+
+	<T extends Base> List<T> filter(List<T> list){
+		if(fullBuild){
+			return list;
+		}
+		List<T> result = new ArrayList<T>();
+		for(T t: list){
+			if(dirty.contains(t)){
+				result.add(t);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Base;
+import org.opoo.press.Post;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Build performance report: time of each phase, generator and filter hook,
+ * and the convert/render time and allocated bytes of each post and page.
+ * Written as JSON to the working directory.
+ *
+ * @author Alex Lin
+ */
+class BuildReport {
+	private static final Logger log = LoggerFactory.getLogger(BuildReport.class);
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+	private final long startTime = System.nanoTime();
+	private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+	private final Map<String, Long> generators = new LinkedHashMap<String, Long>();
+	private final Map<String, Hook> filters = new LinkedHashMap<String, Hook>();
+	private final ConcurrentLinkedQueue<Item> items = new ConcurrentLinkedQueue<Item>();
+	private final int slowest;
+	private final Map<String, long[]> caches = new LinkedHashMap<String, long[]>();
+
+	BuildReport(int slowest) {
+		this.slowest = slowest;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean(){
+		try{
+			Object bean = ManagementFactory.getThreadMXBean();
+			if(bean instanceof com.sun.management.ThreadMXBean){
+				com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) bean;
+				if(mxBean.isThreadAllocatedMemorySupported() && mxBean.isThreadAllocatedMemoryEnabled()){
+					return mxBean;
+				}
+			}
+		}catch(Throwable e){
+			//not HotSpot
+		}
+		log.debug("Thread allocated memory not supported.");
+		return null;
+	}
+
+	private static long getAllocatedBytes(){
+		return THREAD_MX_BEAN != null ? THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+	}
+
+	synchronized void phase(String name, long nanos){
+		phases.put(name, nanos);
+	}
+
+	synchronized void generator(String name, long nanos){
+		Long val = generators.get(name);
+		generators.put(name, val == null ? nanos : val.longValue() + nanos);
+	}
+
+	void filter(String hook, long nanos){
+		Hook h;
+		synchronized (filters) {
+			h = filters.get(hook);
+			if(h == null){
+				h = new Hook();
+				filters.put(hook, h);
+			}
+		}
+		h.calls.incrementAndGet();
+		h.nanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Statistics of a cache, such as 'template_cache'.
+	 */
+	synchronized void cache(String name, long hits, long misses, int cached){
+		caches.put(name, new long[]{hits, misses, cached});
+	}
+
+	/**
+	 * Start timing the post or page in current thread.
+	 * @param base
+	 * @return item timer
+	 */
+	Item startItem(Base base){
+		Item item = new Item(base);
+		items.add(item);
+		return item;
+	}
+
+	void write(File file){
+		try {
+			FileUtils.write(file, toJson(), "UTF-8");
+			log.info("Build report: {}", file);
+		} catch (IOException e) {
+			log.warn("Write build report failed: " + file, e);
+		}
+	}
+
+	synchronized String toJson(){
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"total_ms\": ").append(ms(System.nanoTime() - startTime)).append(",\n");
+
+		sb.append("  \"phases\": [");
+		appendTimes(sb, phases);
+		sb.append("],\n");
+
+		sb.append("  \"generators\": [");
+		appendTimes(sb, generators);
+		sb.append("],\n");
+
+		sb.append("  \"filters\": [");
+		String sep = "\n";
+		for(Map.Entry<String, Hook> en: filters.entrySet()){
+			sb.append(sep).append("    {\"name\": ").append(quote(en.getKey()))
+				.append(", \"calls\": ").append(en.getValue().calls.get())
+				.append(", \"ms\": ").append(ms(en.getValue().nanos.get())).append("}");
+			sep = ",\n";
+		}
+		sb.append(filters.isEmpty() ? "" : "\n  ").append("],\n");
+
+		for(Map.Entry<String, long[]> en: caches.entrySet()){
+			long[] stats = en.getValue();
+			long total = stats[0] + stats[1];
+			sb.append("  ").append(quote(en.getKey())).append(": {\"hits\": ").append(stats[0])
+				.append(", \"misses\": ").append(stats[1])
+				.append(", \"hit_rate\": ").append(String.format(Locale.ROOT, "%.3f", total > 0 ? (double) stats[0] / total : 0.0))
+				.append(", \"cached\": ").append(stats[2]).append("},\n");
+		}
+
+		List<Item> list = new ArrayList<Item>(items);
+		long convert = 0, render = 0, allocated = 0;
+		for(Item item: list){
+			convert += item.convertNanos;
+			render += item.renderNanos;
+			allocated += Math.max(0, item.allocatedBytes);
+		}
+		sb.append("  \"items\": {\"count\": ").append(list.size())
+			.append(", \"convert_ms\": ").append(ms(convert))
+			.append(", \"render_ms\": ").append(ms(render))
+			.append(", \"allocated_bytes\": ").append(THREAD_MX_BEAN != null ? allocated : -1)
+			.append("},\n");
+
+		Collections.sort(list, new Comparator<Item>(){
+			public int compare(Item o1, Item o2) {
+				long x = o2.convertNanos + o2.renderNanos;
+				long y = o1.convertNanos + o1.renderNanos;
+				return (x < y) ? -1 : ((x == y) ? 0 : 1);
+			}
+		});
+		sb.append("  \"slowest\": [");
+		sep = "\n";
+		for(Item item: list.subList(0, Math.min(slowest, list.size()))){
+			sb.append(sep).append("    {\"url\": ").append(quote(item.url))
+				.append(", \"type\": ").append(quote(item.type))
+				.append(", \"convert_ms\": ").append(ms(item.convertNanos))
+				.append(", \"render_ms\": ").append(ms(item.renderNanos))
+				.append(", \"allocated_bytes\": ").append(item.allocatedBytes).append("}");
+			sep = ",\n";
+		}
+		sb.append(list.isEmpty() ? "" : "\n  ").append("]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static void appendTimes(StringBuilder sb, Map<String, Long> times){
+		String sep = "\n";
+		for(Map.Entry<String, Long> en: times.entrySet()){
+			sb.append(sep).append("    {\"name\": ").append(quote(en.getKey()))
+				.append(", \"ms\": ").append(ms(en.getValue())).append("}");
+			sep = ",\n";
+		}
+		if(!times.isEmpty()){
+			sb.append("\n  ");
+		}
+	}
+
+	private static String ms(long nanos){
+		return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+	}
+
+	private static String quote(String str){
+		if(str == null){
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(str.length() + 2);
+		sb.append('"');
+		for(int i = 0 ; i < str.length() ; i++){
+			char c = str.charAt(i);
+			switch(c){
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if(c < 0x20){
+					sb.append(String.format("\\u%04x", (int) c));
+				}else{
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static class Hook{
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+	}
+
+	/**
+	 * Convert and render timing of a post or page, must be used in
+	 * the same thread.
+	 */
+	static class Item{
+		private final String url;
+		private final String type;
+		private long start;
+		private long startBytes;
+		private volatile long convertNanos;
+		private volatile long renderNanos;
+		private volatile long allocatedBytes = -1;
+
+		private Item(Base base){
+			this.url = base.getUrl();
+			this.type = base instanceof Post ? "post" : "page";
+			this.startBytes = getAllocatedBytes();
+			this.start = System.nanoTime();
+		}
+
+		void converted(){
+			long now = System.nanoTime();
+			convertNanos = now - start;
+			start = now;
+		}
+
+		void rendered(){
+			renderNanos = System.nanoTime() - start;
+			if(startBytes >= 0){
+				allocatedBytes = getAllocatedBytes() - startBytes;
+			}
+		}
+	}
+}
@@ -49,8 +49,8 @@ public class ContextImpl implements Context{
 		
 			sourceEntryLoader = new SourceEntryLoaderImpl();
 			
+			//yaml of each thread, the parser is used by preview threads
 			sourceParser = new SourceParserImpl();
-			sourceParser.setYaml(yaml);
 			
 			sourceManager = new SourceManagerImpl();
 			sourceManager.setYaml(yaml);
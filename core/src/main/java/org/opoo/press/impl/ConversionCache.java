@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Converter;
+import org.opoo.press.util.ClassUtils;
+import org.opoo.press.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converted content of the previous builds, one file for each content in
+ * the cache directory. The file name is the digest of the converter class,
+ * the version of converter class, the converter fingerprint and the source
+ * content, so a changed content, converter or configuration never hits the
+ * stale result.
+ *
+ * <p>The version of converter class is {@link ClassUtils#getVersion(Class)},
+ * so a rebuilt snapshot jar is a new version too.
+ *
+ * @author Alex Lin
+ */
+public class ConversionCache {
+	private static final Logger log = LoggerFactory.getLogger(ConversionCache.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File dir;
+	private final byte[] fingerprint;
+	private final Set<String> used = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<Class<?>, String> versions = new ConcurrentHashMap<Class<?>, String>();
+
+	/**
+	 * @param dir cache directory
+	 * @param fingerprint the configuration affects the converted content,
+	 * such as the site configuration
+	 */
+	ConversionCache(File dir, String fingerprint) {
+		this.dir = dir;
+		this.fingerprint = fingerprint.getBytes(UTF_8);
+	}
+
+	/**
+	 * Convert the content, or return the cached result.
+	 * @param converter
+	 * @param content
+	 * @return converted content
+	 */
+	public String convert(Converter converter, String content){
+		if(content == null){
+			return converter.convert(content);
+		}
+		String key = buildKey(converter, content);
+		used.add(key);
+		File file = getFile(key);
+		if(file.isFile()){
+			try {
+				return new String(Files.readAllBytes(file.toPath()), UTF_8);
+			} catch (IOException e) {
+				log.debug("Read converted content failed: " + file, e);
+			}
+		}
+
+		String converted = converter.convert(content);
+		if(converted != null){
+			store(file, converted);
+		}
+		return converted;
+	}
+
+	private String buildKey(Converter converter, String content){
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			md.update(converter.getClass().getName().getBytes(UTF_8));
+			md.update((byte) 0);
+			md.update(getVersion(converter.getClass()).getBytes(UTF_8));
+			md.update((byte) 0);
+			md.update(fingerprint);
+			md.update((byte) 0);
+			md.update(content.getBytes(UTF_8));
+			return DigestUtils.toHex(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private String getVersion(Class<?> clazz){
+		String version = versions.get(clazz);
+		if(version == null){
+			version = ClassUtils.getVersion(clazz);
+			versions.put(clazz, version);
+		}
+		return version;
+	}
+
+	private File getFile(String key){
+		return new File(new File(dir, key.substring(0, 2)), key);
+	}
+
+	/**
+	 * Write to a temporary file and move it, the same content may be
+	 * converted by other thread at the same time.
+	 */
+	private void store(File file, String converted){
+		File tmp = null;
+		try {
+			file.getParentFile().mkdirs();
+			tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			FileUtils.writeStringToFile(tmp, converted, "UTF-8");
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			log.warn("Write converted content failed: " + file, e);
+			FileUtils.deleteQuietly(tmp);
+		}
+	}
+
+	/**
+	 * Delete the cached contents not used in this build, call this only
+	 * if every post and page has been converted.
+	 */
+	void prune(){
+		File[] subdirs = dir.listFiles();
+		if(subdirs == null){
+			return;
+		}
+		int count = 0;
+		for(File subdir: subdirs){
+			File[] files = subdir.listFiles();
+			if(files == null){
+				continue;
+			}
+			for(File file: files){
+				if(!used.contains(file.getName()) && file.delete()){
+					count++;
+				}
+			}
+		}
+		log.debug("Pruned {} converted contents.", count);
+	}
+
+	/**
+	 * Start a new build.
+	 */
+	void reset(){
+		used.clear();
+	}
+}
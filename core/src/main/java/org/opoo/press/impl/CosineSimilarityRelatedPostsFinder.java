@@ -18,7 +18,7 @@ package org.opoo.press.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -69,7 +69,7 @@ public class CosineSimilarityRelatedPostsFinder implements RelatedPostsFinder, I
 		Map<Post, Integer> categoriesCountMap = calculatePostsCount(post, post.getCategories());
 		Map<Post, Integer> tagsCountMap = calculatePostsCount(post, post.getTags());
 		
-		Map<Post, Double> scoreMap = new HashMap<Post, Double>();
+		Map<Post, Double> scoreMap = new LinkedHashMap<Post, Double>();
 		//categories
 		for(Map.Entry<Post, Integer> en: categoriesCountMap.entrySet()){
 			double score = calculate(en.getValue(), post.getCategories().size(), en.getKey().getCategories().size());
@@ -125,7 +125,7 @@ public class CosineSimilarityRelatedPostsFinder implements RelatedPostsFinder, I
 	
 	
 	static Map<Post, Integer> calculatePostsCount(Post post, List<? extends PostsHolder> holders){
-		Map<Post, Integer> countMap = new HashMap<Post, Integer>();
+		Map<Post, Integer> countMap = new LinkedHashMap<Post, Integer>();
 		for(PostsHolder holder: holders){
 			List<Post> posts = holder.getPosts();
 			for_01: for(Post p: posts){
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.util.DigestUtils;
+
+/**
+ * Writes the rendered output as UTF-8 to a temporary file next to the
+ * output file, which is moved to the output file by {@link #commit(OutputManifest)}.
+ * The buffers and encoder are reused by the writers of the same thread.
+ *
+ * <p>Usage: <code>open</code>, render to the writer, <code>commit</code>,
+ * and <code>abort</code> in finally block. Not thread safe.
+ *
+ * @author Alex Lin
+ */
+class OutputFileWriter extends Writer {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final ThreadLocal<OutputFileWriter> POOL = new ThreadLocal<OutputFileWriter>();
+
+	private final CharsetEncoder encoder = UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+	private final ByteBuffer bytes = ByteBuffer.allocate(32768);
+	private final MessageDigest md;
+
+	private File target;
+	private File tempFile;
+	private FileChannel channel;
+	private long size;
+
+	private OutputFileWriter() {
+		try {
+			md = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param target the output file
+	 * @return the writer of current thread
+	 * @throws IOException
+	 */
+	static OutputFileWriter open(File target) throws IOException{
+		OutputFileWriter writer = POOL.get();
+		if(writer == null || writer.channel != null){
+			writer = new OutputFileWriter();
+			POOL.set(writer);
+		}
+		writer.start(target);
+		return writer;
+	}
+
+	private void start(File target) throws IOException{
+		File parentFile = target.getParentFile();
+		if(!parentFile.exists()){
+			parentFile.mkdirs();
+		}
+		this.target = target;
+		this.tempFile = new File(parentFile, "." + target.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		this.channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.size = 0;
+		encoder.reset();
+		chars.clear();
+		bytes.clear();
+		md.reset();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		while(len > 0){
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining()){
+				encode(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		while(len > 0){
+			int n = Math.min(len, chars.remaining());
+			chars.put(str, off, off + n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining()){
+				encode(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		chars.put((char) c);
+		if(!chars.hasRemaining()){
+			encode(false);
+		}
+	}
+
+	/**
+	 * Encode the buffered chars, an incomplete surrogate pair is kept
+	 * in the buffer unless end of input.
+	 */
+	private void encode(boolean endOfInput) throws IOException{
+		chars.flip();
+		while(true){
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if(result.isOverflow()){
+				drain();
+			}else{
+				break;
+			}
+		}
+		if(endOfInput){
+			while(encoder.flush(bytes).isOverflow()){
+				drain();
+			}
+		}
+		chars.compact();
+		drain();
+	}
+
+	private void drain() throws IOException{
+		bytes.flip();
+		md.update(bytes.array(), 0, bytes.limit());
+		size += bytes.limit();
+		while(bytes.hasRemaining()){
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(chars.position() > 0){
+			encode(false);
+		}
+	}
+
+	/**
+	 * Does not close the temporary file, see {@link #commit(OutputManifest)}.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * Move the temporary file to the output file.
+	 * @param manifest the output manifest, the output file is not changed if
+	 * the content not changed
+	 * @return true if the output file written, false if unchanged
+	 * @throws IOException
+	 */
+	boolean commit(OutputManifest manifest) throws IOException{
+		encode(true);
+		FileChannel c = channel;
+		channel = null;
+		c.close();
+		if(manifest != null){
+			return manifest.write(target, tempFile, DigestUtils.toHex(md.digest()), size);
+		}
+		Files.move(tempFile.toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	/**
+	 * Delete the temporary file if not committed.
+	 */
+	void abort(){
+		if(channel != null){
+			IOUtils.closeQuietly(channel);
+			channel = null;
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+}
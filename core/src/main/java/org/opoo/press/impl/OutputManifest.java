@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.opoo.press.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Digest and size of every output file written by last build. Files
+ * which rendered bytes equal to the recorded digest are not written again,
+ * so the last modified time of unchanged output files is preserved.
+ *
+ * @author Alex Lin
+ */
+public class OutputManifest {
+	private static final Logger log = LoggerFactory.getLogger(OutputManifest.class);
+
+	private final File file;
+	private final File dest;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	OutputManifest(File file, File dest) {
+		this.file = file;
+		this.dest = dest;
+	}
+
+	/**
+	 * Write the bytes to target file if the content changed.
+	 * @param target
+	 * @param bytes
+	 * @return true if file written, false if unchanged
+	 * @throws IOException
+	 */
+	public boolean write(File target, byte[] bytes) throws IOException{
+		String path = getPath(target);
+		String digest = DigestUtils.md5Hex(bytes);
+		if(isUnchanged(path, target, digest, bytes.length)){
+			return false;
+		}
+		FileUtils.writeByteArrayToFile(target, bytes);
+		entries.put(path, new Entry(digest, bytes.length, target.lastModified()));
+		return true;
+	}
+
+	/**
+	 * Move the temporary file to target file if the content changed,
+	 * otherwise delete the temporary file.
+	 * @param target
+	 * @param tempFile
+	 * @param digest MD5 of the temporary file
+	 * @param size length of the temporary file
+	 * @return true if file written, false if unchanged
+	 * @throws IOException
+	 */
+	public boolean write(File target, File tempFile, String digest, long size) throws IOException{
+		String path = getPath(target);
+		if(isUnchanged(path, target, digest, size)){
+			Files.delete(tempFile.toPath());
+			return false;
+		}
+		Files.move(tempFile.toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		entries.put(path, new Entry(digest, size, target.lastModified()));
+		return true;
+	}
+
+	private boolean isUnchanged(String path, File target, String digest, long size){
+		Entry entry = entries.get(path);
+		return entry != null && entry.size == size && entry.digest.equals(digest)
+				&& target.length() == entry.size && target.lastModified() == entry.lastModified;
+	}
+
+	private String getPath(File target){
+		String path = target.getPath();
+		String destPath = dest.getPath();
+		if(path.startsWith(destPath)){
+			path = path.substring(destPath.length());
+		}
+		return path.replace(File.separatorChar, '/');
+	}
+
+	void load(){
+		entries.clear();
+		if(!file.exists() || !file.isFile() || !file.canRead()){
+			log.debug("No output manifest file.");
+			return;
+		}
+		try {
+			List<String> lines = FileUtils.readLines(file, "UTF-8");
+			for(String line: lines){
+				String[] arr = StringUtils.split(line, '\t');
+				if(arr.length == 4){
+					entries.put(arr[0], new Entry(arr[1], Long.parseLong(arr[2]), Long.parseLong(arr[3])));
+				}
+			}
+		} catch (Exception e) {
+			log.warn("Read output manifest failed: " + file, e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Save the manifest, drop the entries which file has been deleted.
+	 */
+	void save(){
+		List<String> lines = new ArrayList<String>(entries.size());
+		Iterator<Map.Entry<String, Entry>> it = new TreeMap<String, Entry>(entries).entrySet().iterator();
+		while(it.hasNext()){
+			Map.Entry<String, Entry> en = it.next();
+			if(!new File(dest, en.getKey()).isFile()){
+				entries.remove(en.getKey());
+				continue;
+			}
+			Entry entry = en.getValue();
+			lines.add(en.getKey() + "\t" + entry.digest + "\t" + entry.size + "\t" + entry.lastModified);
+		}
+		try {
+			FileUtils.writeLines(file, "UTF-8", lines, "\n");
+		} catch (IOException e) {
+			throw new RuntimeException("Write output manifest exception", e);
+		}
+	}
+
+	private static class Entry{
+		private final String digest;
+		private final long size;
+		private final long lastModified;
+
+		private Entry(String digest, long size, long lastModified) {
+			this.digest = digest;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+}
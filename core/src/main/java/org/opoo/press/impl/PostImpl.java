@@ -15,22 +15,26 @@
  */
 package org.opoo.press.impl;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.opoo.press.Category;
 import org.opoo.press.Post;
-import org.opoo.press.Site;
 import org.opoo.press.Tag;
 import org.opoo.press.source.Source;
 import org.opoo.press.source.SourceEntry;
 import org.opoo.press.util.LinkUtils;
+import org.opoo.press.util.PermalinkPattern;
 
 /**
  * @author Alex Lin
@@ -39,6 +43,8 @@ import org.opoo.press.util.LinkUtils;
 public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 	public static final String DEFAUL_EXCERPT_SEPARATOR = "<!--more-->";
 	public static Pattern FILENAME_PATTERN = Pattern.compile("[1-9][0-9]{3}[-][0-1][0-9][-][0-3][0-9][-](.*)");
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList("area", "base", "br", "col", 
+			"command", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"));
 	//excerptSeparator = "<!--more-->";
 	
 	private List<String> stringCategories;
@@ -52,6 +58,7 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 	private String excerpt;
 	private boolean excerpted;
 	private boolean isExcerptExtracted = false;
+	private volatile boolean excerptInitialized = false;
 	private List<Post> relatedPosts;
 	
 	private Post next;
@@ -78,12 +85,8 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 
 		stringCategories = getStringList(frontMatter, "categories", "category");
 		
-		initCategories(stringCategories);
-		
 		stringTags = getStringList(frontMatter, "tags", "tag");
 		
-		initTags(stringTags);
-		
 		String url = (String)frontMatter.get("url");
 		if(url == null){
 			String permalinkStyle = getPossiblePermalink();
@@ -99,25 +102,43 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 		excerpt = (String) frontMatter.get("excerpt");
 		if(StringUtils.isNotBlank(excerpt)){
 			excerpted = true;
-		}else{
-			extractExcerpt(getContent());
+			excerptInitialized = true;
+		}
+	}
+	
+	/**
+	 * Extract the excerpt from content when first required, so the content
+	 * is not loaded while reading sources.
+	 */
+	private void initExcerpt(){
+		initExcerpt(null);
+	}
+	
+	private synchronized void initExcerpt(String content){
+		if(!excerptInitialized){
+			extractExcerpt(content != null ? content : getContent());
 			isExcerptExtracted = true;
+			excerptInitialized = true;
 		}
 	}
 
+	/**
+	 * Add this post to the categories and tags of site. Posts are 
+	 * constructed in parallel, call this in the order of posts to 
+	 * keep the order of categories and tags.
+	 */
+	void initTaxonomies(){
+		initCategories(stringCategories);
+		initTags(stringTags);
+	}
+	
 	private void initCategories(List<String> stringCategories) {
 		if(stringCategories == null || stringCategories.isEmpty()){
 			return;
 		}
-		Site site = getSite();
+		SiteImpl site = (SiteImpl) getSite();
 		for(String stringCategory: stringCategories){
-			Category category = site.getCategory(stringCategory);
-			if(category == null){
-				String nicename = site.toNicename(stringCategory);
-				category = new CategoryImpl(nicename, stringCategory, site);
-				//add to site categories
-				site.getCategories().add(category);
-			}
+			Category category = site.getOrCreateCategory(stringCategory);
 			category.getPosts().add(this);
 			this.categories.add(category);
 		}
@@ -127,25 +148,24 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 		if(stringTags == null || stringTags.isEmpty()){
 			return;
 		}
-		Site site = getSite();
+		SiteImpl site = (SiteImpl) getSite();
 		for(String stringTag: stringTags){
-			Tag tag = site.getTag(stringTag);
-			if(tag == null){
-				String slug = site.toSlug(stringTag);
-				tag = new TagImpl(slug, stringTag, site);
-				//add to site tags list
-				site.getTags().add(tag);
-			}
+			Tag tag = site.getOrCreateTag(stringTag);
 			tag.getPosts().add(this);
 			this.tags.add(tag);
 		}
 	}
 	
-	private void extractExcerpt(String content) {
+	private String getExcerptSeparator(){
 		String excerptSeparator = (String) getSite().getConfig().get("excerpt_separator");
 		if(excerptSeparator == null){
 			excerptSeparator = DEFAUL_EXCERPT_SEPARATOR; //"<!--more-->";
 		}
+		return excerptSeparator;
+	}
+	
+	private void extractExcerpt(String content) {
+		String excerptSeparator = getExcerptSeparator();
 		int index = content.indexOf(excerptSeparator);
 		if(index != -1){
 			excerpted = true;
@@ -175,11 +195,103 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 	 */
 	@Override
 	public void convert() {
-		super.convert();
+		//load the content only once
+		String content = getContent();
+		initExcerpt(content);
+		log.debug("Convert content for '{}'", getUrl());
+		String converted = convertContent(content);
+		setContent(converted);
 		if(isExcerptExtracted){
-			this.excerpt = getConverter().convert(excerpt);
+			//convert the content only once if possible
+			String html = excerpted ? extractConvertedExcerpt(content, converted) : converted;
+			this.excerpt = html != null ? html : convertContent(excerpt);
 		}
 	}
+	
+	/**
+	 * Find the excerpt in the converted content, the separator (a HTML 
+	 * comment by default) is usually kept by the converter.
+	 * @param content
+	 * @param converted
+	 * @return the converted excerpt, or null if the separator is not 
+	 * kept at the start of a line, or is escaped (such as in code blocks)
+	 */
+	private String extractConvertedExcerpt(String content, String converted){
+		String excerptSeparator = getExcerptSeparator();
+		int index = converted.indexOf(excerptSeparator);
+		if(index == -1 || (index > 0 && converted.charAt(index - 1) != '\n')){
+			return null;
+		}
+		if(StringUtils.countMatches(content, excerptSeparator) != StringUtils.countMatches(converted, excerptSeparator)){
+			return null;
+		}
+		//separator in blockquote, list or div, the excerpt has unclosed tags
+		if(!isBlockDepthZero(converted, index)){
+			return null;
+		}
+		return converted.substring(0, index);
+	}
+
+	/**
+	 * Whether every tag opened before the end index is closed.
+	 * @param html
+	 * @param end
+	 * @return false if any tag is not closed, or closes a tag not opened
+	 */
+	private static boolean isBlockDepthZero(String html, int end){
+		int depth = 0;
+		int pos = html.indexOf('<');
+		while(pos != -1 && pos < end){
+			if(html.startsWith("<!--", pos)){
+				int close = html.indexOf("-->", pos + 4);
+				if(close == -1){
+					return false;
+				}
+				pos = html.indexOf('<', close + 3);
+				continue;
+			}
+			int close = html.indexOf('>', pos + 1);
+			if(close == -1 || close >= end){
+				return false;
+			}
+			if(pos + 1 < close){
+				char c = html.charAt(pos + 1);
+				if(c == '/'){
+					if(--depth < 0){
+						return false;
+					}
+				}else if(Character.isLetter(c) && html.charAt(close - 1) != '/'
+						&& !isVoidElement(getTagName(html, pos + 1, close))){
+					depth++;
+				}
+			}
+			pos = html.indexOf('<', close + 1);
+		}
+		return depth == 0;
+	}
+
+	private static String getTagName(String html, int start, int end){
+		int i = start;
+		while(i < end && Character.isLetterOrDigit(html.charAt(i))){
+			i++;
+		}
+		return html.substring(start, i).toLowerCase();
+	}
+
+	private static boolean isVoidElement(String name){
+		return VOID_ELEMENTS.contains(name);
+	}
+
+	/**
+	 * Restore the converted and rendered excerpt of last build,
+	 * used by incremental build when this post is not changed.
+	 * @param excerpt
+	 * @see BuildPlan
+	 */
+	void restoreExcerpt(String excerpt){
+		initExcerpt();
+		this.excerpt = excerpt;
+	}
 
 	public List<String> getStringCategories() {
 		return stringCategories;
@@ -207,6 +319,7 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 	 * @return the excerpt
 	 */
 	public String getExcerpt() {
+		initExcerpt();
 		return excerpt;
 	}
 
@@ -214,6 +327,7 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 	 * @return the excerpted
 	 */
 	public boolean isExcerpted() {
+		initExcerpt();
 		return excerpted;
 	}
 
@@ -263,6 +377,12 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 		renderExcerpt(rootMap);
 	}
 	
+	@Override
+	void renderAndWrite(Map<String, Object> rootMap, File dest) {
+		super.renderAndWrite(rootMap, dest);
+		renderExcerpt(rootMap);
+	}
+	
 	
 	
 	@Override
@@ -346,6 +466,19 @@ public class PostImpl extends AbstractBase implements Post, Comparable<Post>{
 			return pathToFile + "/" + name + "/";
 		}
 		
+		//compiled style, no template required
+		PermalinkPattern pattern = PermalinkPattern.compile(permalinkStyle);
+		if(pattern != null){
+			Map<String, String> vars = new HashMap<String, String>(4);
+			vars.put("pathToFile", pathToFile);
+			vars.put("fileName", fileName);
+			vars.put("name", name);
+			String url = pattern.format(date, vars, meta);
+			if(url != null){
+				return url;
+			}
+		}
+		
 		Map<String, Object> params = new HashMap<String,Object>(meta);
 		params.put("pathToFile", pathToFile);
 		params.put("fileName", fileName);
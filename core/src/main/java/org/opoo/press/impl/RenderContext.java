@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Root data model of templates. The site scope is shared by all posts and
+ * pages, it is read only and the values are wrapped once. Each post or page
+ * puts its variables to a child scope, the variables of site scope with the
+ * same names are hidden.
+ *
+ * <p>The site scope is thread safe, a child scope is not.
+ *
+ * @author Alex Lin
+ */
+class RenderContext extends AbstractMap<String, Object> implements TemplateHashModel {
+	private final RenderContext parent;
+	private final ObjectWrapper wrapper;
+	private final Map<String, Object> values;
+	private final Map<String, TemplateModel> models;
+
+	/**
+	 * Create the site scope.
+	 * @param rootMap the site-wide variables
+	 * @param wrapper
+	 * @throws TemplateModelException if any variable can not be wrapped
+	 */
+	RenderContext(Map<String, Object> rootMap, ObjectWrapper wrapper) throws TemplateModelException {
+		this.parent = null;
+		this.wrapper = wrapper;
+		this.values = Collections.unmodifiableMap(new HashMap<String, Object>(rootMap));
+		this.models = new HashMap<String, TemplateModel>();
+		for(Map.Entry<String, Object> en: rootMap.entrySet()){
+			models.put(en.getKey(), wrapper.wrap(en.getValue()));
+		}
+	}
+
+	private RenderContext(RenderContext parent) {
+		this.parent = parent;
+		this.wrapper = parent.wrapper;
+		this.values = new HashMap<String, Object>(8);
+		this.models = null;
+	}
+
+	/**
+	 * @param rootMap
+	 * @return a child scope of the render context, or a copy of other map
+	 */
+	static Map<String, Object> newScope(Map<String, Object> rootMap){
+		if(rootMap instanceof RenderContext){
+			return new RenderContext((RenderContext) rootMap);
+		}
+		return new HashMap<String, Object>(rootMap);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public Object get(Object key) {
+		Object value = values.get(key);
+		if(value == null && parent != null && !values.containsKey(key)){
+			return parent.get(key);
+		}
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return values.isEmpty() && (parent == null || parent.isEmpty());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return values.containsKey(key) || (parent != null && parent.containsKey(key));
+	}
+
+	/**
+	 * Put the variable to this scope, the site scope is read only.
+	 */
+	@Override
+	public Object put(String key, Object value) {
+		Object old = get((Object) key);
+		values.put(key, value);
+		return old;
+	}
+
+	/**
+	 * Remove the variable of this scope only.
+	 */
+	@Override
+	public Object remove(Object key) {
+		return values.remove(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if(parent == null){
+			return values.entrySet();
+		}
+		Map<String, Object> map = new LinkedHashMap<String, Object>(parent);
+		map.putAll(values);
+		return Collections.unmodifiableMap(map).entrySet();
+	}
+
+	/* (non-Javadoc)
+	 * @see freemarker.template.TemplateHashModel#get(java.lang.String)
+	 */
+	@Override
+	public TemplateModel get(String key) throws TemplateModelException {
+		if(models != null){
+			return models.get(key);
+		}
+		Object value = values.get(key);
+		if(value == null && !values.containsKey(key)){
+			return parent.get(key);
+		}
+		return value != null ? wrapper.wrap(value) : null;
+	}
+}
@@ -18,7 +18,6 @@ package org.opoo.press.impl;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -26,7 +25,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -42,9 +40,9 @@ import freemarker.cache.FileTemplateLoader;
 import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
-import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateModelException;
 
 /**
  * @author Alex Lin
@@ -57,7 +55,9 @@ public class RendererImpl implements Renderer {
 	private Site site;
 	private File templateDir;
 	private File workingTemplateDir;
-	private long start = System.currentTimeMillis();
+	private WorkingTemplateLoader workingTemplateLoader;
+	private TemplateCache templateCache;
+	private SiteObjectWrapper objectWrapper;
 	
 	/**
 	 * @param site 
@@ -77,9 +77,14 @@ public class RendererImpl implements Renderer {
 		}
 		log.debug("Working template directory: " + workingTemplateDir.getAbsolutePath());
 		
+		SiteConfig config = site.getConfig();
+		long workingTemplateHeapSize = config.get("working_template_heap_size", 16) * 1024L * 1024L;
+		workingTemplateLoader = new WorkingTemplateLoader(workingTemplateDir, workingTemplateHeapSize);
+		
 		//configuration
 		configuration = new Configuration();
-		configuration.setObjectWrapper(new DefaultObjectWrapper());
+		objectWrapper = new SiteObjectWrapper();
+		configuration.setObjectWrapper(objectWrapper);
 		configuration.setTemplateLoader(buildTemplateLoader(templateLoaders));
 		
 		Locale locale = site.getLocale();
@@ -90,7 +95,6 @@ public class RendererImpl implements Renderer {
 		//Add import i18n messages template.
 		configuration.addAutoImport("i18n", "i18n/messages.ftl");
 		
-		SiteConfig config = site.getConfig();
 		List<String> autoIncludeTemplates = (List<String>) config.get("auto_include_templates");
 		if(autoIncludeTemplates != null && !autoIncludeTemplates.isEmpty()){
 			for(String template: autoIncludeTemplates){
@@ -106,6 +110,8 @@ public class RendererImpl implements Renderer {
 				log.info("Add auto import: " + en.getKey() + " -> " + en.getValue());
 			}
 		}
+		
+		templateCache = new TemplateCache(configuration, config.get("template_cache_size", 1024 * 1024));
 	}
 	
 	private TemplateLoader buildTemplateLoader(List<TemplateLoader> loaders){
@@ -121,6 +127,7 @@ public class RendererImpl implements Renderer {
 				loaders.add(0, loader3);
 				loaders.add(0, loader2);
 				loaders.add(0, loader1);
+				loaders.add(0, workingTemplateLoader);
 			}
 			TemplateLoader[] loaders2 = loaders.toArray(new TemplateLoader[loaders.size()]);
 			//TemplateLoader loader = new MultiTemplateLoader(new TemplateLoader[]{loader1, loader2});
@@ -134,6 +141,37 @@ public class RendererImpl implements Renderer {
 	public Site getSite() {
 		return site;
 	}
+	
+	TemplateCache getTemplateCache() {
+		return templateCache;
+	}
+	
+	/**
+	 * @param rootMap site-wide variables
+	 * @return the shared render context of posts and pages
+	 */
+	Map<String, Object> createRenderContext(Map<String, Object> rootMap) {
+		try {
+			return new RenderContext(rootMap, objectWrapper);
+		} catch (TemplateModelException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Start a new build.
+	 */
+	void reset() {
+		templateCache.resetStatistics();
+		objectWrapper.clearCache();
+	}
+	
+	/**
+	 * End of the build, release the cached models of posts and pages.
+	 */
+	void release() {
+		objectWrapper.clearCache();
+	}
 
 //	private String buildTemplate(String layout, String content){
 //		return buildTemplateContent(layout, content, false).toString();
@@ -179,24 +217,13 @@ public class RendererImpl implements Renderer {
 		log.debug("Prepare template for " + entry.getFile());
 
 		String name = isContentRenderRequired ? buildTemplateName(layout, entry) : getLayoutWorkingTemplate(layout);
-		File targetTemplateFile = new File(this.workingTemplateDir, name);
-		
-		if(targetTemplateFile.exists() && targetTemplateFile.lastModified() >= entry.getLastModified()){
-			log.debug("Working template exists and newer than source file: " + targetTemplateFile);
+		if(workingTemplateLoader.isFresh(name, entry.getLastModified())){
+			log.debug("Working template exists and newer than source file: " + name);
 		}else{
 			StringBuffer templateContent = buildTemplateContent(layout, isValidLayout, 
 					content, isContentRenderRequired);
-			try {
-				FileUtils.write(targetTemplateFile, templateContent, "UTF-8");
-				//targetTemplateFile.setLastModified(sourceEntry.getLastModified());
-				if(log.isDebugEnabled()){
-					log.debug("Create working template: " + targetTemplateFile);
-				}
-			} catch (IOException e) {
-				throw new RuntimeException("Write working template error: " + targetTemplateFile, e);
-			}
+			workingTemplateLoader.put(name, templateContent.toString(), entry.getLastModified());
 		}
-		
 		return name;
 	}
 	
@@ -245,7 +272,7 @@ public class RendererImpl implements Renderer {
 	public void renderContent(String templateContent, Map<String, Object> rootMap, Writer out){
 		Template template = null;
 		try {
-			template = new Template("CT" + (start++), new StringReader(templateContent), configuration, "UTF-8");
+			template = templateCache.getTemplate(templateContent);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -298,21 +325,11 @@ public class RendererImpl implements Renderer {
 		for(File layoutFile: layoutFiles){
 			String layout = FilenameUtils.getBaseName(layoutFile.getName()).substring(1);
 			String name = getLayoutWorkingTemplate(layout);
-			
-			File targetTemplateFile = new File(this.workingTemplateDir, name);
-			if(targetTemplateFile.exists() && targetTemplateFile.lastModified() >= layoutFile.lastModified()){
-				log.debug("Layout template exists and newer than source file: " + targetTemplateFile);
+			if(workingTemplateLoader.isFresh(name, layoutFile.lastModified())){
+				log.debug("Layout template exists and newer than source file: " + name);
 			}else{
 				StringBuffer templateContent = buildTemplateContent(layout, true, null, false);
-				try {
-					FileUtils.write(targetTemplateFile, templateContent, "UTF-8");
-					//targetTemplateFile.setLastModified(sourceEntry.getLastModified());
-					if(log.isDebugEnabled()){
-						log.debug("Create layout template: " + targetTemplateFile);
-					}
-				} catch (IOException e) {
-					throw new RuntimeException("Write layout template error: " + targetTemplateFile, e);
-				}
+				workingTemplateLoader.put(name, templateContent.toString(), layoutFile.lastModified());
 			}
 		}
 	}
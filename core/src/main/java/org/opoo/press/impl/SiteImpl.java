@@ -26,12 +26,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.TreeMap;
 
 import net.sf.ehcache.Cache;
@@ -52,11 +56,13 @@ import org.opoo.press.Renderer;
 import org.opoo.press.Site;
 import org.opoo.press.SiteBuilder;
 import org.opoo.press.SiteConfig;
+import org.opoo.press.SiteFilter;
 import org.opoo.press.SlugHelper;
 import org.opoo.press.StaticFile;
 import org.opoo.press.Tag;
 import org.opoo.press.Writable;
 import org.opoo.press.converter.IdentityConverter;
+import org.opoo.press.filter.MultiSiteFilter;
 import org.opoo.press.highlighter.Highlighter;
 import org.opoo.press.plugin.DefaultPlugin;
 import org.opoo.press.slug.DefaultSlugHelper;
@@ -66,11 +72,18 @@ import org.opoo.press.source.SourceEntry;
 import org.opoo.press.source.SourceEntryLoader;
 import org.opoo.press.source.SourceParser;
 import org.opoo.press.source.impl.EHCachedSourceParseImpl;
+import org.opoo.press.source.impl.FrontMatterCache;
+import org.opoo.press.source.impl.SourceClassifier;
+import org.opoo.press.source.impl.SourceEntryLoaderImpl;
 import org.opoo.press.source.impl.SourceParserImpl;
+import org.opoo.press.task.CallableTask;
 import org.opoo.press.task.RunnableTask;
 import org.opoo.press.task.TaskExecutor;
+import org.opoo.press.template.CacheDirective;
 import org.opoo.press.template.TitleCaseModel;
 import org.opoo.press.util.ClassUtils;
+import org.opoo.press.util.ContentStore;
+import org.opoo.press.util.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +97,13 @@ public class SiteImpl implements Site, SiteBuilder{
 	private static final Logger log = LoggerFactory.getLogger(SiteImpl.class);
 	private static final boolean IS_DEBUG_ENABLED = log.isDebugEnabled();
 	private static final String LAST_BUILD_FILE_SUFFIX = "_lastbuild.properties";
+	private static final String BUILD_GRAPH_FILE_SUFFIX = "_buildgraph";
+	private static final String OUTPUT_MANIFEST_FILE_SUFFIX = "_manifest";
+	private static final String STATIC_SOURCES_FILE_SUFFIX = "_static_sources";
+	private static final String FRONT_MATTER_CACHE_FILE_SUFFIX = "_front_matter";
+	private static final String CONTENT_STORE_FILE_SUFFIX = "_content";
+	private static final String CONVERSION_CACHE_DIR_SUFFIX = "_converted";
+	private static final String BUILD_REPORT_FILE_SUFFIX = "_build_report.json";
 	
 	private SiteConfigImpl config;
 	private Map<String, Object> data;
@@ -108,6 +128,9 @@ public class SiteImpl implements Site, SiteBuilder{
 	
 	private Map<String, Category> categories;
 	private List<Tag> tags;
+	private final List<Tag> tagsList = new TagsList();
+	private Map<String, Tag> tagIndex;
+	private int indexedTags;
 	
 	private Date time;
 	private boolean showDrafts = false;
@@ -118,6 +141,7 @@ public class SiteImpl implements Site, SiteBuilder{
 //	private List<String> includes;
 //	private List<String> excludes;
 	private RegistryImpl registry;
+	private final CacheDirective cacheDirective = new CacheDirective();
 	private Locale locale;
 	private Highlighter highlighter;
 	private SlugHelper slugHelper;
@@ -127,6 +151,19 @@ public class SiteImpl implements Site, SiteBuilder{
 	private File lastBuildInfoFile;
 	private TaskExecutor taskExecutor;
 
+	private boolean incrementalBuild = false;
+	private File buildGraphFile;
+	private BuildPlan buildPlan;
+	private OutputManifest outputManifest;
+	private SourceClassifier sourceClassifier;
+	private FrontMatterCache frontMatterCache;
+	private ContentStore contentStore;
+	private ConversionCache conversionCache;
+	private boolean pipelineBuild = false;
+	private boolean directOutput = false;
+	private boolean buildReportEnabled = false;
+	private BuildReport buildReport;
+
 	private CacheManager cacheManager;
 
 	SiteImpl(SiteConfigImpl siteConfig) {
@@ -166,6 +203,27 @@ public class SiteImpl implements Site, SiteBuilder{
 		
 		taskExecutor = new TaskExecutor(config);
 
+		pipelineBuild = config.get("pipeline_build", false);
+		if(pipelineBuild){
+			log.info("+ Pipeline build option set 'ON'");
+		}
+
+		//render to output files directly, pipeline build only
+		directOutput = pipelineBuild && config.get("direct_output", false);
+		if(directOutput){
+			log.info("+ Direct output option set 'ON'");
+		}
+
+		buildReportEnabled = config.get("build_report", false);
+		if(buildReportEnabled){
+			log.info("+ Build report option set 'ON'");
+		}
+
+		incrementalBuild = config.get("incremental_build", false);
+		if(incrementalBuild){
+			log.info("+ Incremental build option set 'ON'");
+		}
+
 		//cache
 		if(config.get("cache_build", false)){
 			URL url = SiteImpl.class.getClassLoader().getResource("ehcache.xml");
@@ -176,7 +234,6 @@ public class SiteImpl implements Site, SiteBuilder{
 
 			cacheManager.removeAllCaches();
 			cacheManager.addCache("sourceContentCache");
-			cacheManager.addCache("contentCache");
 		}
 	}
 	
@@ -258,20 +315,141 @@ public class SiteImpl implements Site, SiteBuilder{
 		}
 		
 		this.lastBuildInfoFile = new File(working, site.getName() + LAST_BUILD_FILE_SUFFIX);
+		this.buildGraphFile = new File(working, site.getName() + BUILD_GRAPH_FILE_SUFFIX);
+		
+		@SuppressWarnings("unchecked")
+		List<String> staticExtensions = (List<String>) config.get("static_extensions");
+		if(staticExtensions == null){
+			staticExtensions = SourceClassifier.DEFAULT_STATIC_EXTENSIONS;
+		}
+		sourceClassifier = new SourceClassifier(staticExtensions, 
+				new File(working, site.getName() + STATIC_SOURCES_FILE_SUFFIX));
+		
+		//parsed front-matter of unchanged sources
+		if(config.get("front_matter_cache", true)){
+			frontMatterCache = new FrontMatterCache(new File(working, site.getName() + FRONT_MATTER_CACHE_FILE_SUFFIX));
+		}else{
+			log.info("+ Front-matter cache option set 'OFF'");
+		}
+		
+		//contents of posts and pages out of heap
+		if(config.get("content_store", config.get("cache_build", false))){
+			long heapSize = config.get("content_store_heap_size", 64) * 1024L * 1024L;
+			contentStore = new ContentStore(new File(working, site.getName() + CONTENT_STORE_FILE_SUFFIX), heapSize);
+			set("contentStore", contentStore);
+			log.info("+ Content store option set 'ON'");
+		}
+		
+		//converted contents of unchanged sources
+		if(config.get("conversion_cache", false)){
+			//the converters may read any option, such as highlighter
+			String fingerprint = new TreeMap<String, Object>(config).toString();
+			conversionCache = new ConversionCache(new File(working, site.getName() + CONVERSION_CACHE_DIR_SUFFIX), fingerprint);
+			set("conversionCache", conversionCache);
+			log.info("+ Conversion cache option set 'ON'");
+		}
+		
+		//skip writing the output files which content not changed
+		if(config.get("skip_unchanged_output", false)){
+			outputManifest = new OutputManifest(new File(working, site.getName() + OUTPUT_MANIFEST_FILE_SUFFIX), dest);
+			set("outputManifest", outputManifest);
+			log.info("+ Skip unchanged output option set 'ON'");
+		}
 	}
 	
 	public void build(){
-		reset();
-		read();
-		generate();
-		render();
-		cleanup();
-		write();
-		
-		saveLastBuildInfo();
+		long buildTime = System.currentTimeMillis();
+		buildReport = buildReportEnabled ? new BuildReport(config.get("build_report_slowest", 20)) : null;
+		try{
+			long t = System.nanoTime();
+			reset();
+			TemplateCache templateCache = null;
+			if(renderer instanceof RendererImpl){
+				((RendererImpl) renderer).reset();
+				templateCache = ((RendererImpl) renderer).getTemplateCache();
+			}
+			if(outputManifest != null){
+				outputManifest.load();
+			}
+			t = phase("reset", t);
+			read();
+			t = phase("read", t);
+			generate();
+			t = phase("generate", t);
+			plan();
+			t = phase("plan", t);
+			if(pipelineBuild){
+				cleanup();
+				t = phase("cleanup", t);
+				renderAndWrite();
+				t = phase("render_and_write", t);
+			}else{
+				render();
+				t = phase("render", t);
+				cleanup();
+				t = phase("cleanup", t);
+				write();
+				t = phase("write", t);
+			}
+			
+			saveBuildGraph(buildTime);
+			if(outputManifest != null){
+				outputManifest.save();
+			}
+			//unchanged posts and pages are not converted in incremental build
+			if(conversionCache != null && (buildPlan == null || buildPlan.isFullBuild())){
+				conversionCache.prune();
+			}
+			saveLastBuildInfo();
+			phase("save", t);
+			
+			if(templateCache != null){
+				log.debug("Template cache: {} hits, {} misses, hit rate {}, {} cached.", new Object[]{
+						templateCache.getHits(), templateCache.getMisses(), templateCache.getHitRate(), templateCache.size()});
+			}
+			log.debug("Fragment cache: {} hits, {} misses, {} cached.", new Object[]{
+					cacheDirective.getHits(), cacheDirective.getMisses(), cacheDirective.size()});
+			if(buildReport != null){
+				if(templateCache != null){
+					buildReport.cache("template_cache", templateCache.getHits(), templateCache.getMisses(), templateCache.size());
+				}
+				buildReport.cache("fragment_cache", cacheDirective.getHits(), cacheDirective.getMisses(), cacheDirective.size());
+				buildReport.write(new File(working, site.getName() + BUILD_REPORT_FILE_SUFFIX));
+			}
+		}finally{
+			//release build threads
+			taskExecutor.shutdown();
+			//release cached template models of posts and pages
+			if(renderer instanceof RendererImpl){
+				((RendererImpl) renderer).release();
+			}
+		}
 	}
 
+	/**
+	 * Record the time of build phase if build report enabled.
+	 * @param name phase name
+	 * @param start start time in nanoseconds
+	 * @return current time in nanoseconds
+	 */
+	private long phase(String name, long start){
+		long now = System.nanoTime();
+		if(buildReport != null){
+			buildReport.phase(name, now - start);
+		}
+		return now;
+	}
+	
+	private long filter(String hook, long start){
+		long now = System.nanoTime();
+		if(buildReport != null){
+			buildReport.filter(hook, now - start);
+		}
+		return now;
+	}
+	
 	void reset(){
+		cacheDirective.clear();
 		this.time = (Date) config.get("time");
 		if(time == null){
 			time = new Date();
@@ -280,6 +458,7 @@ public class SiteImpl implements Site, SiteBuilder{
 		this.posts = new ArrayList<Post>();
 		//在多线程中 add
 		this.staticFiles = Collections.synchronizedList(new ArrayList<StaticFile>());
+		this.buildPlan = null;
 		
 		resetCategories();
 		resetTags();
@@ -287,6 +466,13 @@ public class SiteImpl implements Site, SiteBuilder{
 		if(cacheManager != null){
 			cacheManager.clearAll();
 		}
+		//contents of the last build are kept until next build, reuse the segments
+		if(contentStore != null){
+			contentStore.clear();
+		}
+		if(conversionCache != null){
+			conversionCache.reset();
+		}
 	}
 	
 	void resetCategories(){
@@ -324,6 +510,8 @@ public class SiteImpl implements Site, SiteBuilder{
 	
 	void resetTags(){
 		this.tags = new ArrayList<Tag>();
+		this.tagIndex = new HashMap<String,Tag>();
+		this.indexedTags = 0;
 		@SuppressWarnings("unchecked")
 		Map<String,String> names = (Map<String, String>) config.get("tag_names");
 		if(names == null || names.isEmpty()){
@@ -368,6 +556,8 @@ public class SiteImpl implements Site, SiteBuilder{
 		this.registry = new RegistryImpl(this);
 		//register default converter
 		this.registry.registerConverter(new IdentityConverter());
+		//register <@cache> directive, plugins may replace it
+		this.registry.registerTemplateModel("cache", cacheDirective);
 		
 		//plugins
 		new DefaultPlugin().initialize(registry);
@@ -400,6 +590,8 @@ public class SiteImpl implements Site, SiteBuilder{
 
 
 	void read(){
+		//sources are parsed in parallel in readSources()
+		final List<StaticFile> assetFiles = new ArrayList<StaticFile>();
 		Runnable t1 = new Runnable(){
 			public void run() {
 				readSources();
@@ -408,11 +600,13 @@ public class SiteImpl implements Site, SiteBuilder{
 		
 		Runnable t2 = new Runnable(){
 			public void run() {
-				readStaticFiles();
+				readStaticFiles(assetFiles);
 			}
 		};
 		
 		taskExecutor.run(t1, t2);
+		//assets after the static files of sources
+		staticFiles.addAll(assetFiles);
 		
 		postRead();
 	}
@@ -420,25 +614,47 @@ public class SiteImpl implements Site, SiteBuilder{
 	private void readSources(){
 		log.info("Reading sources ...");
 		
-		final SourceEntryLoader loader = Application.getContext().getSourceEntryLoader();
 		//final SourceParser parser = Application.getContext().getSourceParser();
-		final SourceParser parser = cacheManager != null ? new EHCachedSourceParseImpl(cacheManager) : new SourceParserImpl();
+		//SourceParserImpl is thread safe, the yaml is thread local
+		final SourceParserImpl parser = cacheManager != null ? new EHCachedSourceParseImpl(cacheManager) : new SourceParserImpl();
+		parser.setFrontMatterCache(frontMatterCache);
 
 		//load sources and load static files
 		
-		FileFilter fileFilter = buildFilter();
-		List<SourceEntry> list = loader.loadSourceEntries(source, fileFilter);
+		List<File> sourcePaths = new ArrayList<File>();
+		sourcePaths.add(source);
 		if(sources != null && !sources.isEmpty()){
-			for(File src: sources){
-				List<SourceEntry> tempList = loader.loadSourceEntries(src, fileFilter);
-				if(tempList != null && !tempList.isEmpty()){
-					list.addAll(tempList);
-				}
+			sourcePaths.addAll(sources);
+		}
+		List<SourceEntry> list = loadSourceEntries(sourcePaths);
+		
+		//parse sources and construct posts and pages in parallel
+		sourceClassifier.load();
+		if(frontMatterCache != null){
+			frontMatterCache.load();
+		}
+		List<Object> results = taskExecutor.call(list, new CallableTask<SourceEntry,Object>(){
+			public Object call(SourceEntry en) {
+				return read(en, parser);
 			}
+		});
+		
+		sourceClassifier.save();
+		if(frontMatterCache != null){
+			frontMatterCache.save();
 		}
 		
-		for(SourceEntry en: list){
-			read(en, parser);
+		//keep the order of sources
+		for(Object o: results){
+			if(o instanceof PostImpl){
+				PostImpl post = (PostImpl) o;
+				post.initTaxonomies();
+				posts.add(post);
+			}else if(o instanceof Page){
+				pages.add((Page) o);
+			}else if(o instanceof StaticFile){
+				staticFiles.add((StaticFile) o);
+			}
 		}
 		
 		Collections.sort(posts);
@@ -477,30 +693,56 @@ public class SiteImpl implements Site, SiteBuilder{
 		}
 	}
 	
-	private void readStaticFiles(){
+	private void readStaticFiles(List<StaticFile> assetFiles){
 		if(assets != null){
 			log.info("Reading assets ...");
-			SourceEntryLoader loader = Application.getContext().getSourceEntryLoader();
-			FileFilter fileFilter = buildFilter();
-			List<SourceEntry> list = loader.loadSourceEntries(assets, fileFilter);
+			List<SourceEntry> list = loadSourceEntries(Collections.singletonList(assets));
 			for(SourceEntry se: list){
-				this.staticFiles.add(new StaticFileImpl(this, se));
+				assetFiles.add(new StaticFileImpl(this, se));
 			}
 		}
 	}
 
+	/**
+	 * Load the source entries of the source paths, the sub directories are
+	 * scanned in parallel by the default source entry loader.
+	 */
+	private List<SourceEntry> loadSourceEntries(List<File> sourcePaths){
+		SourceEntryLoader loader = Application.getContext().getSourceEntryLoader();
+		FileFilter fileFilter = buildFilter();
+		if(loader instanceof SourceEntryLoaderImpl){
+			return ((SourceEntryLoaderImpl) loader).loadSourceEntries(sourcePaths, fileFilter, taskExecutor);
+		}
+		List<SourceEntry> list = new ArrayList<SourceEntry>();
+		for(File sourcePath: sourcePaths){
+			List<SourceEntry> tempList = loader.loadSourceEntries(sourcePath, fileFilter);
+			if(tempList != null && !tempList.isEmpty()){
+				list.addAll(tempList);
+			}
+		}
+		return list;
+	}
+
 
 	/**
 	 * 
 	 */
 	private void postRead() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRead(this);
+		filter("postRead", t);
 	}
 
 	/**
 	 * @param en
+	 * @return post, page, static file, or null if the source is a draft
+	 * and drafts not shown
 	 */
-	private void read(SourceEntry en, SourceParser parser) {
+	private Object read(SourceEntry en, SourceParser parser) {
+		//static files are found without decoding
+		if(sourceClassifier.isStaticFile(en)){
+			return new StaticFileImpl(this, en);
+		}
 		try {
 			Source src = parser.parse(en);
 			log.debug("read source " + src.getSourceEntry().getFile());
@@ -508,22 +750,24 @@ public class SiteImpl implements Site, SiteBuilder{
 			Map<String, Object> map = src.getMeta();
 			String layout = (String) map.get("layout");
 			if("post".equals(layout)){
-				readPost(src);
+				return readPost(src);
 			}else{
-				pages.add(new PageImpl(this, src));
+				return new PageImpl(this, src);
 			}
 		} catch (NoFrontMatterException e) {
-			this.staticFiles.add(new StaticFileImpl(this, en));
+			sourceClassifier.setStaticFile(en);
+			return new StaticFileImpl(this, en);
 		}
 	}
 	
-	private void readPost(Source src){
+	private Post readPost(Source src){
 		if(isDraft(src.getMeta())){
 			if(showDrafts){
-				posts.add(new Draft(this, src));
+				return new Draft(this, src);
 			}
+			return null;
 		}else{
-			posts.add(new PostImpl(this, src));
+			return new PostImpl(this, src);
 		}
 	}
 	
@@ -540,6 +784,8 @@ public class SiteImpl implements Site, SiteBuilder{
 		final List<String> includes = (List<String>) config.get("includes");
 		@SuppressWarnings("unchecked")
 		final List<String> excludes = (List<String>) config.get("excludes");
+		//hidden files on unix start with '.', checked by name
+		final boolean checkHidden = File.separatorChar == '\\';
 		return new FileFilter(){
 			@Override
 			public boolean accept(File file) {
@@ -558,7 +804,7 @@ public class SiteImpl implements Site, SiteBuilder{
 				if(lastChar == '~'){
 					return false;
 				}
-				if(file.isHidden()){
+				if(checkHidden && file.isHidden()){
 					return false;
 				}
 				return true;
@@ -569,7 +815,11 @@ public class SiteImpl implements Site, SiteBuilder{
 	
 	void generate(){
 		for(Generator g: registry.getGenerators()){
+			long t = System.nanoTime();
 			g.generate(this);
+			if(buildReport != null){
+				buildReport.generator(g.getClass().getName(), System.nanoTime() - t);
+			}
 		}
 		postGenerate();
 	}
@@ -578,11 +828,38 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * 
 	 */
 	private void postGenerate() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postGenerate(this);
+		filter("postGenerate", t);
+	}
+
+	/**
+	 * Compare with the build graph of last build, find out the changed
+	 * posts and pages.
+	 */
+	void plan(){
+		if(incrementalBuild){
+			buildPlan = BuildPlan.create(this, BuildGraph.load(buildGraphFile));
+			if(!buildPlan.isFullBuild()){
+				//the content of unchanged posts and pages is in the output files of last build
+				for(Post post: posts){
+					if(!buildPlan.isDirty(post)){
+						releaseContent(post);
+					}
+				}
+				for(Page page: pages){
+					if(!buildPlan.isDirty(page)){
+						releaseContent(page);
+					}
+				}
+			}
+		}
 	}
 
 	void render(){
-		final Map<String, Object> rootMap = buildRootMap();
+		final Map<String, Object> rootMap = buildRenderContext();
+		List<Post> posts = buildPlan != null ? buildPlan.filter(this.posts) : this.posts;
+		List<Page> pages = buildPlan != null ? buildPlan.filter(this.pages) : this.pages;
 		renderer.prepareLayoutWorkingTemplates();
 		
 //		for(Post post: posts){
@@ -592,16 +869,25 @@ public class SiteImpl implements Site, SiteBuilder{
 //			post.render(rootMap);
 //			postRenderPost(post);
 //		}
+		long t = System.nanoTime();
 		log.info("Rendering {} posts...", posts.size());
 		taskExecutor.run(posts, new RunnableTask<Post>(){
 			public void run(Post post) {
+				BuildReport.Item item = buildReport != null ? buildReport.startItem(post) : null;
 				post.convert();
 				postConvertPost(post);
+				if(item != null){
+					item.converted();
+				}
 //				
 				post.render(rootMap);
 				postRenderPost(post);
+				if(item != null){
+					item.rendered();
+				}
 			}});
 		postRenderPosts();
+		t = phase("render.posts", t);
 		
 //		for(Page page: pages){
 //			page.convert();
@@ -614,68 +900,202 @@ public class SiteImpl implements Site, SiteBuilder{
 		log.info("Rendering {} pages...", pages.size());
 		taskExecutor.run(pages, new RunnableTask<Page>(){
 			public void run(Page page) {
+				BuildReport.Item item = buildReport != null ? buildReport.startItem(page) : null;
 				page.convert();
 				postConvertPage(page);
+				if(item != null){
+					item.converted();
+				}
 				
 				page.render(rootMap);
 				postRenderPage(page);
+				if(item != null){
+					item.rendered();
+				}
+			}
+		});
+		postRenderPages();
+		phase("render.pages", t);
+		
+		postRender();
+		
+	}
+	
+	/**
+	 * Pipeline mode: every post and page is converted, rendered, filtered
+	 * and written in one task, and the content is released right after
+	 * written. So the rendered content in memory is limited by the build
+	 * threads, only the excerpts of posts are retained.
+	 * 
+	 * <p>Note: postRenderAllPosts, postRenderAllPages and postRender filters
+	 * are called after the files written.
+	 * 
+	 * <p>With direct output, the posts (pages) are rendered to the output
+	 * files without the rendered content in memory if no filter implements
+	 * postRenderPost (postRenderPage).
+	 */
+	void renderAndWrite(){
+		final Map<String, Object> rootMap = buildRenderContext();
+		renderer.prepareLayoutWorkingTemplates();
+		List<Post> posts = buildPlan != null ? buildPlan.filter(this.posts) : this.posts;
+		List<Page> pages = buildPlan != null ? buildPlan.filter(this.pages) : this.pages;
+		
+		if(!dest.exists()){
+			dest.mkdirs();
+		}
+		
+		//render directly to output files if no filter requires the rendered content
+		MultiSiteFilter siteFilter = registry.getSiteFilter();
+		final boolean directOutputPosts = directOutput && !siteFilter.isImplemented("postRenderPost", Site.class, Post.class);
+		final boolean directOutputPages = directOutput && !siteFilter.isImplemented("postRenderPage", Site.class, Page.class);
+		
+		log.info("Rendering and writing {} posts...", posts.size());
+		taskExecutor.run(posts, new RunnableTask<Post>(){
+			public void run(Post post) {
+				BuildReport.Item item = buildReport != null ? buildReport.startItem(post) : null;
+				post.convert();
+				postConvertPost(post);
+				if(item != null){
+					item.converted();
+				}
+				
+				if(directOutputPosts && post instanceof AbstractConvertible && ((AbstractConvertible) post).isRenderAndWriteSupported()){
+					((AbstractConvertible) post).renderAndWrite(rootMap, dest);
+					postRenderPost(post);
+					if(item != null){
+						item.rendered();
+					}
+				}else{
+					post.render(rootMap);
+					postRenderPost(post);
+					if(item != null){
+						item.rendered();
+					}
+					
+					post.write(dest);
+				}
+				releaseContent(post);
+			}});
+		postRenderPosts();
+		
+		log.info("Rendering and writing {} pages...", pages.size());
+		taskExecutor.run(pages, new RunnableTask<Page>(){
+			public void run(Page page) {
+				BuildReport.Item item = buildReport != null ? buildReport.startItem(page) : null;
+				page.convert();
+				postConvertPage(page);
+				if(item != null){
+					item.converted();
+				}
+				
+				if(directOutputPages && page instanceof AbstractConvertible && ((AbstractConvertible) page).isRenderAndWriteSupported()){
+					((AbstractConvertible) page).renderAndWrite(rootMap, dest);
+					postRenderPage(page);
+					if(item != null){
+						item.rendered();
+					}
+				}else{
+					page.render(rootMap);
+					postRenderPage(page);
+					if(item != null){
+						item.rendered();
+					}
+					
+					page.write(dest);
+				}
+				releaseContent(page);
 			}
 		});
 		postRenderPages();
 		
 		postRender();
 		
+		log.info("Writing {} static files ...", staticFiles.size());
+		taskExecutor.runIO(staticFiles, new RunnableTask<StaticFile>() {
+			public void run(StaticFile o) {
+				o.write(dest);
+			}
+		});
+		postWrite();
+	}
+	
+	private void releaseContent(Writable writable){
+		if(writable instanceof AbstractBase){
+			((AbstractBase) writable).releaseContent(dest);
+		}
 	}
 	
 	/**
 	 * @param post
 	 */
 	private void postConvertPost(Post post) {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postConvertPost(this, post);
+		filter("postConvertPost", t);
 	}
 
 	/**
 	 * @param page
 	 */
 	private void postConvertPage(Page page) {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postConvertPage(this, page);
+		filter("postConvertPage", t);
 	}
 
 	/**
 	 * @param post
 	 */
 	private void postRenderPost(Post post) {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRenderPost(this, post);
+		filter("postRenderPost", t);
 	}
 
 	/**
 	 * 
 	 */
 	private void postRenderPosts() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRenderAllPosts(this);
+		filter("postRenderAllPosts", t);
 	}
 
 	/**
 	 * @param page
 	 */
 	private void postRenderPage(Page page) {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRenderPage(this, page);
+		filter("postRenderPage", t);
 	}
 
 	/**
 	 * 
 	 */
 	private void postRenderPages() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRenderAllPages(this);
+		filter("postRenderAllPages", t);
 	}
 
 	/**
 	 * @deprecated Will be removed in the next main release.
 	 */
 	private void postRender() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postRender(this);
+		filter("postRender", t);
 	}
 
+	/**
+	 * The root map shared by all posts and pages in render phase.
+	 */
+	private Map<String,Object> buildRenderContext(){
+		Map<String, Object> rootMap = buildRootMap();
+		return renderer instanceof RendererImpl ? ((RendererImpl) renderer).createRenderContext(rootMap) : rootMap;
+	}
+	
 	Map<String,Object> buildRootMap(){
 		Map<String, Object> map = new HashMap<String,Object>();
 		map.put("site", this);
@@ -706,46 +1126,42 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 	
 	/**
-	 * 
+	 * Delete the files in destination directory which are not the output
+	 * of any post, page or static file.
 	 */
 	void cleanup() {
 		log.info("cleanup...");
 		final List<File> destFiles = getAllDestFiles(dest);
-		List<File> files = new ArrayList<File>();
+		Set<File> files = new HashSet<File>();
 		
-//		for(Post post: posts){
-//			files.add(post.getOutputFile(dest));
-//		}
-//		for(Page page: pages){
-//			files.add(page.getOutputFile(dest));
-//		}
+		for(Post post: posts){
+			files.add(post.getOutputFile(dest));
+		}
+		for(Page page: pages){
+			files.add(page.getOutputFile(dest));
+		}
 		for(StaticFile staticFile: staticFiles){
 			files.add(staticFile.getOutputFile(dest));
 		}
 
 		log.debug("Files in target: {}", destFiles.size());
-		log.debug("Asset files in src: {}", files.size());
+		log.debug("Output files in site: {}", files.size());
 
 		//find obsolete files
-		for(File file: files){
-			destFiles.remove(file);
+		List<File> obsoleteFiles = new ArrayList<File>();
+		for(File file: destFiles){
+			if(!files.contains(file)){
+				obsoleteFiles.add(file);
+			}
 		}
-//		destFiles.removeAll(files);
 		
 		if(log.isDebugEnabled()){
-			log.debug("Files in target will be deleted: " + destFiles.size());
+			log.debug("Files in target will be deleted: " + obsoleteFiles.size());
 		}
 
 		//delete obsolete files
-		if(!destFiles.isEmpty()){
-//			for(File destFile: destFiles){
-//				//FileUtils.deleteQuietly(destFile);
-//				if(IS_DEBUG_ENABLED){
-//					log.debug("Delete file " + destFile);
-//				}
-//			}
-			
-			taskExecutor.run(destFiles, new RunnableTask<File>() {
+		if(!obsoleteFiles.isEmpty()){
+			taskExecutor.runIO(obsoleteFiles, new RunnableTask<File>() {
 				public void run(File file) {
 					FileUtils.deleteQuietly(file);
 					if(IS_DEBUG_ENABLED){
@@ -760,14 +1176,31 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 	
 	/**
+	 * List all files in destination directory, each sub directory
+	 * of destination is listed in a separate task.
 	 * @param dest
 	 * @return
 	 */
 	private List<File> getAllDestFiles(File dest) {
-		List<File> files = new ArrayList<File>();
-		if(dest != null && dest.exists()){
-			listDestFiles(files, dest);
+		final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+		if(dest == null || !dest.exists()){
+			return files;
+		}
+		List<File> dirs = new ArrayList<File>();
+		for(File f: dest.listFiles()){
+			if(f.isFile()){
+				files.add(f);
+			}else if(f.isDirectory()){
+				dirs.add(f);
+			}
 		}
+		taskExecutor.runIO(dirs, new RunnableTask<File>() {
+			public void run(File dir) {
+				List<File> list = new ArrayList<File>();
+				listDestFiles(list, dir);
+				files.addAll(list);
+			}
+		});
 		return files;
 	}
 	
@@ -790,6 +1223,8 @@ public class SiteImpl implements Site, SiteBuilder{
 
 
 	void write(){
+		List<Post> posts = buildPlan != null ? buildPlan.filter(this.posts) : this.posts;
+		List<Page> pages = buildPlan != null ? buildPlan.filter(this.pages) : this.pages;
 		log.info("Writing {} posts, {} pages, and {} static files ...", 
 				posts.size(), pages.size(), staticFiles.size());
 		
@@ -821,7 +1256,7 @@ public class SiteImpl implements Site, SiteBuilder{
 			list.addAll(staticFiles);
 		}
 		
-		taskExecutor.run(list, new RunnableTask<Writable>() {
+		taskExecutor.runIO(list, new RunnableTask<Writable>() {
 			public void run(Writable o) {
 				o.write(dest);
 			}
@@ -845,7 +1280,9 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * 
 	 */
 	private void postWrite() {
+		long t = System.nanoTime();
 		registry.getSiteFilter().postWrite(this);
+		filter("postWrite", t);
 	}
 
 	/**
@@ -981,7 +1418,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	 */
 	@Override
 	public List<Tag> getTags() {
-		return tags;
+		return tagsList;
 	}
 
 	/* (non-Javadoc)
@@ -1023,7 +1460,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * @see org.opoo.press.SiteHelper#getCategory(java.lang.String)
 	 */
 	@Override
-	public Category getCategory(String categoryNameOrNicename) {
+	public synchronized Category getCategory(String categoryNameOrNicename) {
 		if(categories == null || categories.isEmpty()){
 			return null;
 		}
@@ -1043,16 +1480,96 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * @see org.opoo.press.SiteHelper#getTag(java.lang.String)
 	 */
 	@Override
-	public Tag getTag(String tagNameOrSlug) {
+	public synchronized Tag getTag(String tagNameOrSlug) {
 		if(tags == null || tags.isEmpty()){
 			return null;
 		}
-		for(Tag tag: tags){
-			if(tag.isNameOrSlug(tagNameOrSlug)){
-				return tag;
+		//index the tags appended since last lookup, first tag wins, the
+		//index is reset by TagsList if the list is modified otherwise
+		for(; indexedTags < tags.size(); indexedTags++){
+			Tag tag = tags.get(indexedTags);
+			if(!tagIndex.containsKey(tag.getSlug())){
+				tagIndex.put(tag.getSlug(), tag);
+			}
+			if(!tagIndex.containsKey(tag.getName())){
+				tagIndex.put(tag.getName(), tag);
+			}
+		}
+		return tagIndex.get(tagNameOrSlug);
+	}
+	
+	synchronized Category getOrCreateCategory(String categoryName){
+		Category category = getCategory(categoryName);
+		if(category == null){
+			String nicename = toNicename(categoryName);
+			category = new CategoryImpl(nicename, categoryName, this);
+			//add to site categories
+			getCategories().add(category);
+		}
+		return category;
+	}
+	
+	synchronized Tag getOrCreateTag(String tagName){
+		Tag tag = getTag(tagName);
+		if(tag == null){
+			String slug = toSlug(tagName);
+			tag = new TagImpl(slug, tagName, this);
+			//add to site tags list
+			tags.add(tag);
+		}
+		return tag;
+	}
+	
+	private synchronized void resetTagIndex(){
+		tagIndex.clear();
+		indexedTags = 0;
+	}
+	
+	/**
+	 * Tags list of the site, keeps the tag index of {@link #getTag(String)}
+	 * valid when the list is modified by generators or plugins.
+	 */
+	private class TagsList extends AbstractList<Tag> implements RandomAccess{
+		@Override
+		public Tag get(int index) {
+			return tags.get(index);
+		}
+
+		@Override
+		public int size() {
+			return tags.size();
+		}
+
+		@Override
+		public Tag set(int index, Tag tag) {
+			synchronized (SiteImpl.this) {
+				Tag old = tags.set(index, tag);
+				resetTagIndex();
+				return old;
+			}
+		}
+
+		@Override
+		public void add(int index, Tag tag) {
+			synchronized (SiteImpl.this) {
+				tags.add(index, tag);
+				modCount++;
+				//appended tags are indexed in next lookup
+				if(index < tags.size() - 1){
+					resetTagIndex();
+				}
+			}
+		}
+
+		@Override
+		public Tag remove(int index) {
+			synchronized (SiteImpl.this) {
+				Tag old = tags.remove(index);
+				modCount++;
+				resetTagIndex();
+				return old;
 			}
 		}
-		return null;
 	}
 	
 	private static class CategoriesList extends AbstractList<Category>{
@@ -1114,6 +1631,42 @@ public class SiteImpl implements Site, SiteBuilder{
 		return showDrafts;
 	}
 	
+	/**
+	 * Digest of the effective configuration, the destination and the
+	 * versions of the classes producing the output, such as the converters,
+	 * generators and site filters of plugins.
+	 * @return build fingerprint
+	 */
+	String getBuildFingerprint(){
+		StringBuilder sb = new StringBuilder();
+		sb.append(new TreeMap<String, Object>(config)).append('|').append(dest);
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		classes.add(SiteImpl.class);
+		classes.add(renderer.getClass());
+		if(highlighter != null){
+			classes.add(highlighter.getClass());
+		}
+		for(Converter c: registry.getConverters()){
+			classes.add(c.getClass());
+		}
+		for(Generator g: registry.getGenerators()){
+			classes.add(g.getClass());
+		}
+		for(SiteFilter f: registry.getSiteFilters()){
+			classes.add(f.getClass());
+		}
+		for(Class<?> c: classes){
+			sb.append('|').append(c.getName()).append('=').append(ClassUtils.getVersion(c));
+		}
+		return DigestUtils.md5Hex(sb.toString());
+	}
+	
+	private void saveBuildGraph(long buildTime){
+		if(incrementalBuild){
+			BuildGraph.create(this, buildTime).save(buildGraphFile);
+		}
+	}
+	
 	private void saveLastBuildInfo(){
 		Properties props = new Properties();
 		props.setProperty("build_time", String.valueOf(System.currentTimeMillis()));
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.template.WrappingTemplateModel;
+
+/**
+ * Object wrapper for site templates.
+ *
+ * <p>{@link DefaultObjectWrapper} copies a list into a new sequence every
+ * time it is accessed, such as <code>site.posts</code>, and creates a new
+ * bean model for each access of post, page, category and tag. This wrapper
+ * adapts the random access lists without copying, and caches the bean models
+ * of the site, posts, pages, categories and tags until {@link #clearCache()}.
+ * Thread safe.
+ *
+ * @author Alex Lin
+ */
+class SiteObjectWrapper extends DefaultObjectWrapper {
+	private final ConcurrentMap<Object, TemplateModel> models = new ConcurrentHashMap<Object, TemplateModel>();
+
+	/* (non-Javadoc)
+	 * @see freemarker.template.DefaultObjectWrapper#wrap(java.lang.Object)
+	 */
+	@Override
+	public TemplateModel wrap(Object obj) throws TemplateModelException {
+		if(obj instanceof List && obj instanceof RandomAccess){
+			return new ListModel((List<?>) obj, this);
+		}
+		if(isCacheable(obj)){
+			TemplateModel model = models.get(obj);
+			if(model == null){
+				model = super.wrap(obj);
+				TemplateModel old = models.putIfAbsent(obj, model);
+				if(old != null){
+					model = old;
+				}
+			}
+			return model;
+		}
+		return super.wrap(obj);
+	}
+
+	/**
+	 * Only the classes using identity equality.
+	 */
+	private static boolean isCacheable(Object obj){
+		return obj instanceof AbstractBase || obj instanceof SiteImpl
+				|| obj instanceof CategoryImpl || obj instanceof TagImpl;
+	}
+
+	/**
+	 * Remove the cached models, call this before and after each build.
+	 */
+	void clearCache(){
+		models.clear();
+	}
+
+	/**
+	 * Sequence adapter of a random access list, the items are wrapped
+	 * when required.
+	 */
+	private static class ListModel extends WrappingTemplateModel
+			implements TemplateSequenceModel, AdapterTemplateModel {
+		private final List<?> list;
+
+		private ListModel(List<?> list, ObjectWrapper wrapper) {
+			super(wrapper);
+			this.list = list;
+		}
+
+		@Override
+		public TemplateModel get(int index) throws TemplateModelException {
+			if(index < 0 || index >= list.size()){
+				return null;
+			}
+			return wrap(list.get(index));
+		}
+
+		@Override
+		public int size() throws TemplateModelException {
+			return list.size();
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Object getAdaptedObject(Class hint) {
+			return list;
+		}
+	}
+}
@@ -17,8 +17,12 @@ package org.opoo.press.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opoo.press.Site;
@@ -83,21 +87,32 @@ public class StaticFileImpl implements StaticFile {
 	@Override
 	public void write(File dest) {
 		File target = getOutputFile(dest);
-
-		if(target.exists() && target.length() == sourceEntry.getLength() 
-				&& target.lastModified() >= sourceEntry.getLastModified()){
+		Path targetPath = target.toPath();
+		
+		//one stat of target, attributes of source are read by the scanner
+		BasicFileAttributes attrs = null;
+		try {
+			attrs = Files.readAttributes(targetPath, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			//not exists
+		} catch (IOException e) {
+			log.debug("Read attributes error: " + target, e);
+		}
+		
+		if(attrs != null && attrs.size() == sourceEntry.getLength() 
+				&& attrs.lastModifiedTime().toMillis() >= sourceEntry.getLastModified()){
 			//log.debug("Target file is newer than source file, skip copying.");
 			return;
 		}
 		
 		try {
-			File parentFile = target.getParentFile();
-			if(!parentFile.exists()){
-				parentFile.mkdirs();
+			if(attrs == null){
+				Files.createDirectories(targetPath.getParent());
 			}
 			
 			log.debug("Copying static file to " + target);
-			FileUtils.copyFile(sourceEntry.getFile(), target);
+			Files.copy(sourceEntry.getFile().toPath(), targetPath, 
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
 		} catch (IOException e) {
 			log.error("Copying static file error: " + target, e);
 			throw new RuntimeException(e);
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opoo.press.util.DigestUtils;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Compiled templates of the template contents, such as excerpts and
+ * permalinks, keyed by the MD5 digest of the content. The cache is bounded
+ * by the total length of the cached contents, an approximate of the memory
+ * used by the compiled templates, the least recently used templates are
+ * removed when the cache is full. Thread safe, the compiled template can
+ * be processed in multiple threads.
+ *
+ * @author Alex Lin
+ */
+class TemplateCache {
+	private final Configuration configuration;
+	private final int maxSize;
+	private final LinkedHashMap<String, Entry> templates = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long size;
+	private final AtomicLong names = new AtomicLong(System.currentTimeMillis());
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param configuration
+	 * @param maxSize max total length of the cached contents in characters,
+	 * 0 to disable the cache
+	 */
+	TemplateCache(Configuration configuration, int maxSize) {
+		this.configuration = configuration;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param content template content
+	 * @return the compiled template
+	 * @throws IOException if the content is not a valid template
+	 */
+	Template getTemplate(String content) throws IOException{
+		if(maxSize <= 0 || content.length() > maxSize){
+			misses.incrementAndGet();
+			return compile(content);
+		}
+
+		String key = DigestUtils.md5Hex(content);
+		Entry entry;
+		synchronized (templates) {
+			entry = templates.get(key);
+		}
+		if(entry != null){
+			hits.incrementAndGet();
+			return entry.template;
+		}
+
+		//compile out of lock, the same content may be compiled twice
+		misses.incrementAndGet();
+		Template template = compile(content);
+		synchronized (templates) {
+			Entry old = templates.put(key, new Entry(template, content.length()));
+			if(old != null){
+				size -= old.size;
+			}
+			size += content.length();
+			Iterator<Entry> it = templates.values().iterator();
+			while(size > maxSize && it.hasNext()){
+				size -= it.next().size;
+				it.remove();
+			}
+		}
+		return template;
+	}
+
+	private Template compile(String content) throws IOException{
+		return new Template("CT" + names.getAndIncrement(), new StringReader(content), configuration, "UTF-8");
+	}
+
+	long getHits(){
+		return hits.get();
+	}
+
+	long getMisses(){
+		return misses.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), 0 if no template requested
+	 */
+	double getHitRate(){
+		long h = hits.get();
+		long total = h + misses.get();
+		return total > 0 ? (double) h / total : 0;
+	}
+
+	int size(){
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+
+	/**
+	 * @return total length of the cached contents
+	 */
+	long getContentSize(){
+		synchronized (templates) {
+			return size;
+		}
+	}
+
+	/**
+	 * Reset the statistics for a new build, the compiled templates are kept.
+	 */
+	void resetStatistics(){
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static class Entry {
+		private final Template template;
+		private final int size;
+
+		private Entry(Template template, int size) {
+			this.template = template;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import freemarker.cache.TemplateLoader;
+
+/**
+ * Working templates in memory, the templates synthesized for the layouts
+ * and the posts and pages whose content requires rendering.
+ *
+ * <p>The least recently used templates are written to the working template
+ * directory when the memory size exceeded, the file template loader of that
+ * directory must be the next loader. The file is deleted when the template
+ * is put again. Thread safe.
+ *
+ * @author Alex Lin
+ */
+class WorkingTemplateLoader implements TemplateLoader {
+	private static final Logger log = LoggerFactory.getLogger(WorkingTemplateLoader.class);
+
+	private final File dir;
+	private final long maxSize;
+	private final LinkedHashMap<String, Source> sources = new LinkedHashMap<String, Source>(256, 0.75f, true);
+	private final Map<String, Long> evicted = new HashMap<String, Long>();
+	private long size;
+
+	/**
+	 * @param dir working template directory
+	 * @param maxSize max bytes of templates kept in memory
+	 */
+	WorkingTemplateLoader(File dir, long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param name template name
+	 * @param stamp the last modified time of the source of template
+	 * @return true if the template was put with the same stamp, in memory
+	 * or evicted to file
+	 */
+	synchronized boolean isFresh(String name, long stamp){
+		name = normalize(name);
+		Source source = sources.get(name);
+		if(source != null){
+			return source.stamp == stamp;
+		}
+		Long evictedStamp = evicted.get(name);
+		return evictedStamp != null && evictedStamp.longValue() == stamp;
+	}
+
+	/**
+	 * Put the template, the file of the template evicted before is deleted,
+	 * so the file template loader never finds the stale template.
+	 * @param name template name
+	 * @param content template content
+	 * @param stamp the last modified time of the source of template
+	 */
+	void put(String name, String content, long stamp){
+		name = normalize(name);
+		synchronized (this) {
+			Source old = sources.get(name);
+			long lastModified = System.currentTimeMillis();
+			if(old != null){
+				lastModified = Math.max(lastModified, old.lastModified + 1);
+				size -= sizeOf(old.content);
+			}
+			if(evicted.remove(name) != null){
+				File file = new File(dir, name);
+				if(file.exists() && !file.delete()){
+					throw new RuntimeException("Delete evicted working template error: " + file);
+				}
+			}
+			Source source = new Source(content, lastModified, stamp);
+			sources.put(name, source);
+			size += sizeOf(content);
+			evict(source);
+		}
+	}
+
+	private void evict(Source keep){
+		Iterator<Map.Entry<String, Source>> it = sources.entrySet().iterator();
+		while(size > maxSize && it.hasNext()){
+			Map.Entry<String, Source> en = it.next();
+			Source source = en.getValue();
+			if(source == keep){
+				continue;
+			}
+			write(en.getKey(), source.content);
+			evicted.put(en.getKey(), source.stamp);
+			size -= sizeOf(source.content);
+			it.remove();
+		}
+	}
+
+	/**
+	 * Write to a temporary file and then move to the target file, the
+	 * template may be read by other thread.
+	 */
+	private void write(String name, String content){
+		File file = new File(dir, name);
+		File tempFile = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			FileUtils.write(tempFile, content, "UTF-8");
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("Working template evicted to file: {}", file);
+		} catch (IOException e) {
+			throw new RuntimeException("Write working template error: " + file, e);
+		}
+	}
+
+	private static String normalize(String name){
+		return name.startsWith("/") ? name.substring(1) : name;
+	}
+
+	private static long sizeOf(String content){
+		return 40L + 2L * content.length();
+	}
+
+	/* (non-Javadoc)
+	 * @see freemarker.cache.TemplateLoader#findTemplateSource(java.lang.String)
+	 */
+	@Override
+	public synchronized Object findTemplateSource(String name) throws IOException {
+		return sources.get(normalize(name));
+	}
+
+	/* (non-Javadoc)
+	 * @see freemarker.cache.TemplateLoader#getLastModified(java.lang.Object)
+	 */
+	@Override
+	public long getLastModified(Object templateSource) {
+		return ((Source) templateSource).lastModified;
+	}
+
+	/* (non-Javadoc)
+	 * @see freemarker.cache.TemplateLoader#getReader(java.lang.Object, java.lang.String)
+	 */
+	@Override
+	public Reader getReader(Object templateSource, String encoding) throws IOException {
+		return new StringReader(((Source) templateSource).content);
+	}
+
+	/* (non-Javadoc)
+	 * @see freemarker.cache.TemplateLoader#closeTemplateSource(java.lang.Object)
+	 */
+	@Override
+	public void closeTemplateSource(Object templateSource) throws IOException {
+	}
+
+	/**
+	 * Template source, a changed template is always a new source.
+	 */
+	private static class Source{
+		private final String content;
+		private final long lastModified;
+		private final long stamp;
+
+		private Source(String content, long lastModified, long stamp) {
+			this.content = content;
+			this.lastModified = lastModified;
+			this.stamp = stamp;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package org.opoo.press.source;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.apache.commons.io.monitor.FileEntry;
 
@@ -47,6 +48,22 @@ public class SourceEntry extends FileEntry {
 		refresh(file);
 	}
 	
+	/**
+	 * Create the entry with the attributes already read, no more file
+	 * system access.
+	 * @param parent
+	 * @param file
+	 * @param attributes
+	 */
+	public SourceEntry(SourceEntry parent, File file, BasicFileAttributes attributes) {
+		super(parent, file);
+		path = getPath(parent);
+		setExists(true);
+		setDirectory(attributes.isDirectory());
+		setLastModified(attributes.lastModifiedTime().toMillis());
+		setLength(attributes.isDirectory() ? 0 : attributes.size());
+	}
+	
 	/**
 	 * 
 	 * @param entry
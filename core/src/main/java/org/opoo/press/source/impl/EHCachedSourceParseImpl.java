@@ -43,6 +43,14 @@ public class EHCachedSourceParseImpl extends SourceParserImpl{
         this(cacheManager.getCache("sourceContentCache"));
     }
 
+    /**
+     * Content is put into the cache while parsing.
+     */
+    @Override
+    protected boolean isLazyContent() {
+        return false;
+    }
+
     @Override
     protected Source createSource(SourceEntry sourceEntry, Map<String, Object> map, String content) {
         return new EHCachedSource(sourceEntry, map, content, sourceContentCache);
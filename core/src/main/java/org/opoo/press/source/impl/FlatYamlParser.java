@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.yaml.snakeyaml.constructor.Construct;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Parses the common flat front-matter without the YAML parser:
+ * <code>key: value</code> lines, flow lists <code>[a, b]</code> and block
+ * lists of scalars. Scalars are resolved and constructed by SnakeYAML,
+ * so the values are the same as {@link org.yaml.snakeyaml.Yaml#load(String)}.
+ *
+ * <p>Anything else, such as nested maps, multi-line or escaped scalars,
+ * anchors and tags, is left to the YAML parser. Not thread safe.
+ *
+ * @author Alex Lin
+ */
+class FlatYamlParser {
+	private static final Object UNSUPPORTED = new Object();
+	private static final String INDICATORS = "-?:,[]{}#&*!|>'\"%@`";
+
+	private final Resolver resolver = new Resolver();
+	private final ScalarConstructor constructor = new ScalarConstructor();
+
+	/**
+	 * @param text the front-matter
+	 * @return the map, or null if the front-matter is not flat
+	 */
+	Map<String, Object> parse(String text){
+		String[] lines = text.split("\r\n|\r|\n", -1);
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		int i = 0;
+		while(i < lines.length){
+			String line = lines[i++];
+			if(isBlankOrComment(line)){
+				continue;
+			}
+			if(line.charAt(0) == ' ' || line.indexOf('\t') != -1){
+				return null;
+			}
+
+			int colon = line.indexOf(':');
+			if(colon <= 0 || !isKey(line, colon)){
+				return null;
+			}
+			String key = line.substring(0, colon);
+			if(!Tag.STR.equals(resolver.resolve(NodeId.scalar, key, true))){
+				return null;
+			}
+			if(colon + 1 < line.length() && line.charAt(colon + 1) != ' '){
+				return null;
+			}
+
+			String value = line.substring(colon + 1).trim();
+			Object o;
+			if(value.length() > 0){
+				o = value.charAt(0) == '[' ? parseFlowList(value) : parseScalar(value, false);
+			}else{
+				//block list or null
+				List<Object> list = null;
+				int indent = -1;
+				while(i < lines.length){
+					String item = lines[i];
+					if(isBlankOrComment(item)){
+						i++;
+						continue;
+					}
+					if(item.indexOf('\t') != -1){
+						return null;
+					}
+					int k = 0;
+					while(item.charAt(k) == ' '){
+						k++;
+					}
+					if(item.charAt(k) != '-' || (k + 1 < item.length() && item.charAt(k + 1) != ' ')){
+						if(k > 0){
+							return null;
+						}
+						break;
+					}
+					if(indent == -1){
+						indent = k;
+					}else if(indent != k){
+						return null;
+					}
+					String str = item.substring(k + 1).trim();
+					Object v = str.length() > 0 ? parseScalar(str, false) : UNSUPPORTED;
+					if(v == UNSUPPORTED){
+						return null;
+					}
+					if(list == null){
+						list = new ArrayList<Object>();
+					}
+					list.add(v);
+					i++;
+				}
+				o = list;
+			}
+			if(o == UNSUPPORTED){
+				return null;
+			}
+			map.put(key, o);
+		}
+		return map.isEmpty() ? null : map;
+	}
+
+	private static boolean isBlankOrComment(String line){
+		String str = line.trim();
+		return str.length() == 0 || (str.charAt(0) == '#' && line.indexOf('\t') == -1);
+	}
+
+	private static boolean isKey(String line, int colon){
+		char c = line.charAt(0);
+		if(!Character.isLetter(c) && c != '_'){
+			return false;
+		}
+		for(int i = 1 ; i < colon ; i++){
+			c = line.charAt(i);
+			if(!Character.isLetterOrDigit(c) && c != '_' && c != '-'){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Object parseFlowList(String value){
+		if(value.charAt(value.length() - 1) != ']'){
+			return UNSUPPORTED;
+		}
+		String str = value.substring(1, value.length() - 1);
+		List<Object> list = new ArrayList<Object>();
+		if(str.trim().length() == 0){
+			return list;
+		}
+		for(String item: str.split(",", -1)){
+			item = item.trim();
+			if(item.length() == 0){
+				return UNSUPPORTED;
+			}
+			Object o = parseScalar(item, true);
+			if(o == UNSUPPORTED){
+				return UNSUPPORTED;
+			}
+			list.add(o);
+		}
+		return list;
+	}
+
+	private Object parseScalar(String value, boolean flow){
+		char c = value.charAt(0);
+		int length = value.length();
+		if(c == '"' || c == '\''){
+			//no escapes
+			if(length < 2 || value.charAt(length - 1) != c || value.indexOf(c, 1) != length - 1
+					|| (c == '"' && value.indexOf('\\') != -1)){
+				return UNSUPPORTED;
+			}
+			return value.substring(1, length - 1);
+		}
+
+		if(INDICATORS.indexOf(c) != -1 && !(c == '-' && length > 1 && value.charAt(1) != ' ')){
+			return UNSUPPORTED;
+		}
+		if(value.indexOf(": ") != -1 || value.indexOf(" #") != -1 || value.charAt(length - 1) == ':'){
+			return UNSUPPORTED;
+		}
+		if(flow && (value.indexOf(':') != -1 || value.indexOf('[') != -1 || value.indexOf(']') != -1
+				|| value.indexOf('{') != -1 || value.indexOf('}') != -1 || value.indexOf('#') != -1)){
+			return UNSUPPORTED;
+		}
+
+		Tag tag = resolver.resolve(NodeId.scalar, value, true);
+		if(Tag.STR.equals(tag)){
+			return value;
+		}
+		if(Tag.NULL.equals(tag) || Tag.BOOL.equals(tag) || Tag.INT.equals(tag)
+				|| Tag.FLOAT.equals(tag) || Tag.TIMESTAMP.equals(tag)){
+			try{
+				return constructor.construct(tag, value);
+			}catch(RuntimeException e){
+				return UNSUPPORTED;
+			}
+		}
+		return UNSUPPORTED;
+	}
+
+	/**
+	 * The scalar constructors of SnakeYAML.
+	 */
+	private static class ScalarConstructor extends SafeConstructor{
+		Object construct(Tag tag, String value){
+			Construct construct = yamlConstructors.get(tag);
+			return construct.construct(new ScalarNode(tag, value, null, null, null));
+		}
+	}
+}
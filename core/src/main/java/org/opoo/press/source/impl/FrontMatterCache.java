@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.source.SourceEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed front-matter of the last build, saved in a compact binary file.
+ * An entry is used only if the length and last modified time of the file
+ * are not changed, so the YAML header of unchanged files is not parsed
+ * again.
+ *
+ * <p>The maps are kept encoded in memory and decoded for each
+ * {@link #get(SourceEntry)}, every source gets its own copy.
+ *
+ * @author Alex Lin
+ */
+public class FrontMatterCache {
+	private static final Logger log = LoggerFactory.getLogger(FrontMatterCache.class);
+	private static final int MAGIC = 0x4f504d31;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte BIG_INTEGER = 6;
+	private static final byte DATE = 7;
+	private static final byte LIST = 8;
+	private static final byte SET = 9;
+	private static final byte MAP = 10;
+
+	private final File file;
+	private final Map<String, Entry> previous = new ConcurrentHashMap<String, Entry>();
+	private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * @param file the cache file
+	 */
+	public FrontMatterCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Find the front-matter of the source entry parsed in last build.
+	 * @param entry
+	 * @return cached front-matter, or null if not cached or file changed
+	 */
+	public Cached get(SourceEntry entry){
+		String path = entry.getFile().getPath();
+		Entry e = previous.get(path);
+		if(e == null || e.length != entry.getLength() || e.lastModified != entry.getLastModified()){
+			return null;
+		}
+		try {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> meta = (Map<String, Object>) readValue(
+					new DataInputStream(new ByteArrayInputStream(e.meta)));
+			current.put(path, e);
+			return new Cached(meta, e.contentOffset);
+		} catch (IOException ex) {
+			log.debug("Decode cached front-matter failed: " + path, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Put the front-matter just parsed, must be called before the map
+	 * is changed.
+	 * @param entry
+	 * @param meta
+	 * @param contentOffset offset of content in file
+	 */
+	public void put(SourceEntry entry, Map<String, Object> meta, int contentOffset){
+		String path = entry.getFile().getPath();
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeValue(out, meta);
+			out.flush();
+			current.put(path, new Entry(entry.getLength(), entry.getLastModified(), contentOffset, bytes.toByteArray()));
+		} catch (IOException e) {
+			//value type not supported
+			log.debug("Front-matter not cacheable: " + path + ", " + e.getMessage());
+		}
+	}
+
+	public void load(){
+		previous.clear();
+		current.clear();
+		if(file == null || !file.isFile()){
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+			if(in.readInt() != MAGIC){
+				log.debug("Unknown front-matter cache file: {}", file);
+				return;
+			}
+			int size = in.readInt();
+			for(int i = 0 ; i < size ; i++){
+				String path = in.readUTF();
+				long length = in.readLong();
+				long lastModified = in.readLong();
+				int contentOffset = in.readInt();
+				byte[] meta = new byte[in.readInt()];
+				in.readFully(meta);
+				previous.put(path, new Entry(length, lastModified, contentOffset, meta));
+			}
+			log.debug("Front-matter cache loaded: {} entries", size);
+		} catch (IOException e) {
+			log.warn("Read front-matter cache failed: " + file, e);
+			previous.clear();
+		}finally{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Save the front-matter of the sources read in this build.
+	 */
+	public void save(){
+		if(file == null){
+			return;
+		}
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(FileUtils.openOutputStream(file), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(current.size());
+			for(Map.Entry<String, Entry> en: new TreeMap<String, Entry>(current).entrySet()){
+				Entry e = en.getValue();
+				out.writeUTF(en.getKey());
+				out.writeLong(e.length);
+				out.writeLong(e.lastModified);
+				out.writeInt(e.contentOffset);
+				out.writeInt(e.meta.length);
+				out.write(e.meta);
+			}
+			out.flush();
+		} catch (IOException e) {
+			log.warn("Write front-matter cache failed: " + file, e);
+		}finally{
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException{
+		if(value == null){
+			out.writeByte(NULL);
+		}else if(value instanceof String){
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}else if(value instanceof Boolean){
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}else if(value instanceof Integer){
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}else if(value instanceof Long){
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}else if(value instanceof Double){
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}else if(value instanceof BigInteger){
+			out.writeByte(BIG_INTEGER);
+			writeString(out, value.toString());
+		}else if(value.getClass() == Date.class){
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		}else if(value instanceof List){
+			out.writeByte(LIST);
+			writeValues(out, (List<?>) value);
+		}else if(value instanceof Set){
+			out.writeByte(SET);
+			writeValues(out, (Set<?>) value);
+		}else if(value instanceof Map){
+			Map<?,?> map = (Map<?,?>) value;
+			out.writeByte(MAP);
+			out.writeInt(map.size());
+			for(Map.Entry<?, ?> en: map.entrySet()){
+				writeValue(out, en.getKey());
+				writeValue(out, en.getValue());
+			}
+		}else{
+			throw new IOException("Unsupported type: " + value.getClass().getName());
+		}
+	}
+
+	private static void writeValues(DataOutputStream out, Collection<?> values) throws IOException{
+		out.writeInt(values.size());
+		for(Object o: values){
+			writeValue(out, o);
+		}
+	}
+
+	//writeUTF() is limited to 64K
+	private static void writeString(DataOutputStream out, String str) throws IOException{
+		byte[] bytes = str.getBytes(SourceParserImpl.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, SourceParserImpl.UTF_8);
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException{
+		byte type = in.readByte();
+		switch(type){
+		case NULL: return null;
+		case STRING: return readString(in);
+		case BOOLEAN: return in.readBoolean();
+		case INTEGER: return in.readInt();
+		case LONG: return in.readLong();
+		case DOUBLE: return in.readDouble();
+		case BIG_INTEGER: return new BigInteger(readString(in));
+		case DATE: return new Date(in.readLong());
+		case LIST:{
+			int size = in.readInt();
+			List<Object> list = new ArrayList<Object>(size);
+			for(int i = 0 ; i < size ; i++){
+				list.add(readValue(in));
+			}
+			return list;
+		}
+		case SET:{
+			int size = in.readInt();
+			Set<Object> set = new LinkedHashSet<Object>();
+			for(int i = 0 ; i < size ; i++){
+				set.add(readValue(in));
+			}
+			return set;
+		}
+		case MAP:{
+			int size = in.readInt();
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for(int i = 0 ; i < size ; i++){
+				Object key = readValue(in);
+				map.put(key, readValue(in));
+			}
+			return map;
+		}
+		default:
+			throw new IOException("Unknown type: " + type);
+		}
+	}
+
+	private static class Entry{
+		private final long length;
+		private final long lastModified;
+		private final int contentOffset;
+		private final byte[] meta;
+
+		private Entry(long length, long lastModified, int contentOffset, byte[] meta) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.contentOffset = contentOffset;
+			this.meta = meta;
+		}
+	}
+
+	/**
+	 * Front-matter and content offset of a source.
+	 */
+	public static class Cached{
+		private final Map<String, Object> meta;
+		private final int contentOffset;
+
+		private Cached(Map<String, Object> meta, int contentOffset) {
+			this.meta = meta;
+			this.contentOffset = contentOffset;
+		}
+
+		public Map<String, Object> getMeta() {
+			return meta;
+		}
+
+		public int getContentOffset() {
+			return contentOffset;
+		}
+	}
+}
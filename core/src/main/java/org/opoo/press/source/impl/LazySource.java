@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.source.Source;
+import org.opoo.press.source.SourceEntry;
+
+/**
+ * Source keeps only the offset of content in file, the content is read
+ * from file each time {@link #getContent()} called.
+ * 
+ * @author Alex Lin
+ */
+public class LazySource implements Source {
+	private final Map<String, Object> frontMatter;
+	private final SourceEntry sourceEntry;
+	private final int contentOffset;
+	
+	LazySource(SourceEntry sourceEntry, Map<String, Object> frontMatter, int contentOffset) {
+		super();
+		this.sourceEntry = sourceEntry;
+		this.frontMatter = frontMatter;
+		this.contentOffset = contentOffset;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.source.Source#getSourceEntry()
+	 */
+	@Override
+	public SourceEntry getSourceEntry() {
+		return sourceEntry;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.source.Source#getMeta()
+	 */
+	@Override
+	public Map<String, Object> getMeta() {
+		return frontMatter;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.source.Source#getContent()
+	 */
+	@Override
+	public String getContent() {
+		File file = sourceEntry.getFile();
+		try {
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			return decodeContent(bytes, Math.min(contentOffset, bytes.length), bytes.length);
+		} catch (IOException e) {
+			throw new RuntimeException("Read source content error: " + file, e);
+		}
+	}
+	
+	/**
+	 * Decode the content, every line ends with the system line separator.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return content string
+	 */
+	static String decodeContent(byte[] bytes, int offset, int length){
+		String text = new String(bytes, offset, length - offset, SourceParserImpl.UTF_8);
+		String separator = IOUtils.LINE_SEPARATOR;
+		if(text.isEmpty() || ("\n".equals(separator) && text.indexOf('\r') == -1 && text.endsWith("\n"))){
+			return text;
+		}
+		
+		StringBuilder sb = new StringBuilder(text.length() + separator.length());
+		int len = text.length();
+		int pos = 0;
+		while(pos < len){
+			int end = pos;
+			char c = 0;
+			while(end < len && (c = text.charAt(end)) != '\n' && c != '\r'){
+				end++;
+			}
+			sb.append(text, pos, end).append(separator);
+			pos = end + 1;
+			if(c == '\r' && pos < len && text.charAt(pos) == '\n'){
+				pos++;
+			}
+		}
+		return sb.toString();
+	}
+}
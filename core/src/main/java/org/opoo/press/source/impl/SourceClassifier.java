@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.opoo.press.source.SourceEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the static files (no front-matter) without reading them: by the
+ * file extension, by the file length, or by the result of last build. The
+ * other files are checked by {@link SourceParserImpl} with the first bytes
+ * of the only read of the file, and marked by {@link #setStaticFile(SourceEntry)}.
+ * 
+ * @author Alex Lin
+ */
+public class SourceClassifier {
+	private static final Logger log = LoggerFactory.getLogger(SourceClassifier.class);
+	
+	/**
+	 * Extensions of binary files, never have front-matter.
+	 */
+	public static final List<String> DEFAULT_STATIC_EXTENSIONS = Arrays.asList(
+			"png", "jpg", "jpeg", "gif", "ico", "bmp", "webp", "tif", "tiff", "psd",
+			"pdf", "zip", "gz", "tgz", "bz2", "7z", "rar", "jar", "war", "exe", "dmg",
+			"mp3", "mp4", "m4a", "m4v", "ogg", "ogv", "webm", "wav", "avi", "mov", "flv", "swf",
+			"woff", "woff2", "ttf", "otf", "eot");
+	
+	private final Set<String> staticExtensions;
+	private final File file;
+	//static files of last build: path -> length and last modified
+	private final Map<String, String> previous = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> current = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * @param staticExtensions extensions of static files, lower case
+	 * @param file file to save the result, may be null
+	 */
+	public SourceClassifier(Collection<String> staticExtensions, File file) {
+		this.staticExtensions = new HashSet<String>(staticExtensions);
+		this.file = file;
+	}
+	
+	/**
+	 * Check whether the source entry is known as a static file, the file
+	 * is not read.
+	 * @param entry
+	 * @return true if the file is a static file, false if unknown
+	 */
+	public boolean isStaticFile(SourceEntry entry){
+		String extension = FilenameUtils.getExtension(entry.getName());
+		if(staticExtensions.contains(extension.toLowerCase())){
+			return true;
+		}
+		
+		String path = entry.getFile().getPath();
+		String stamp = entry.getLength() + ":" + entry.getLastModified();
+		if(entry.getLength() == 0 || stamp.equals(previous.get(path))){
+			current.put(path, stamp);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Mark the source entry as a static file, such as the file has not
+	 * front-matter end line.
+	 * @param entry
+	 */
+	public void setStaticFile(SourceEntry entry){
+		current.put(entry.getFile().getPath(), entry.getLength() + ":" + entry.getLastModified());
+	}
+	
+	public void load(){
+		previous.clear();
+		current.clear();
+		if(file == null || !file.isFile()){
+			return;
+		}
+		try {
+			for(String line: FileUtils.readLines(file, "UTF-8")){
+				String[] arr = StringUtils.split(line, '\t');
+				if(arr.length == 2){
+					previous.put(arr[0], arr[1]);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Read source classification failed: " + file, e);
+			previous.clear();
+		}
+	}
+	
+	/**
+	 * Save the static files found in this build.
+	 */
+	public void save(){
+		if(file == null){
+			return;
+		}
+		List<String> lines = new ArrayList<String>(current.size());
+		for(Map.Entry<String, String> en: new TreeMap<String, String>(current).entrySet()){
+			lines.add(en.getKey() + "\t" + en.getValue());
+		}
+		try {
+			FileUtils.writeLines(file, "UTF-8", lines, "\n");
+		} catch (IOException e) {
+			log.warn("Write source classification failed: " + file, e);
+		}
+	}
+}
@@ -17,44 +17,176 @@ package org.opoo.press.source.impl;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.opoo.press.source.SourceEntry;
 import org.opoo.press.source.SourceEntryLoader;
+import org.opoo.press.task.RunnableTask;
+import org.opoo.press.task.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * Scans the source directories with {@link Files#walkFileTree}, the
+ * attributes of each file are read only once and kept in the
+ * {@link SourceEntry}. The top level sub directories of every source
+ * directory are scanned in parallel.
+ * 
  * @author Alex Lin
  *
  */
 public class SourceEntryLoaderImpl  implements SourceEntryLoader {
+	private static final Logger log = LoggerFactory.getLogger(SourceEntryLoaderImpl.class);
 
 	/* (non-Javadoc)
 	 * @see org.opoo.press.source.SourceEntryLoader#loadSourceEntries(java.io.File, java.io.FileFilter)
 	 */
 	@Override
 	public List<SourceEntry> loadSourceEntries(File sourcePath, FileFilter fileFilter) {
+		return loadSourceEntries(Collections.singletonList(sourcePath), fileFilter, null);
+	}
+
+	/**
+	 * Load all source file entries of the source paths, the sub directories
+	 * are scanned in parallel.
+	 * @param sourcePaths
+	 * @param fileFilter
+	 * @param taskExecutor executor to scan the directories, scan in current thread if null
+	 * @return the list of all source entries, in the order of source paths
+	 */
+	public List<SourceEntry> loadSourceEntries(List<File> sourcePaths, FileFilter fileFilter, TaskExecutor taskExecutor) {
+		//scan the top level of source paths, sub directories are scanned later
+		List<Scanner> roots = new ArrayList<Scanner>();
+		List<Scanner> subtrees = new ArrayList<Scanner>();
+		for(File sourcePath: sourcePaths){
+			Scanner root = new Scanner(sourcePath.toPath(), null, fileFilter, subtrees);
+			root.run();
+			roots.add(root);
+		}
+		
+		RunnableTask<Scanner> task = new RunnableTask<Scanner>(){
+			public void run(Scanner scanner) {
+				scanner.run();
+			}
+		};
+		if(taskExecutor != null){
+			taskExecutor.runIO(subtrees, task);
+		}else{
+			for(Scanner scanner: subtrees){
+				task.run(scanner);
+			}
+		}
+		
+		//same order as scanning in a single thread
 		List<SourceEntry> results = new ArrayList<SourceEntry>();
-		listFileEntries(results, sourcePath, null, fileFilter);
+		for(Scanner root: roots){
+			root.collect(results);
+		}
 		return results;
 	}
 	
-	private void listFileEntries(List<SourceEntry> results, File parent, SourceEntry parentEntry, FileFilter fileFilter){
-		File[] files = parent.listFiles(fileFilter);
-		SourceEntry[] children = new SourceEntry[files.length];
-		for(int i = 0 ; i < files.length ; i++){
-			File file = files[i];
-			SourceEntry child = new SourceEntry(parentEntry, file);
-			children[i] = child;
-			
-			if(file.isFile()){
-				results.add(child);
-			}else if(file.isDirectory()){
-				listFileEntries(results, file, child, fileFilter);
-			}
-		}
-		if(parentEntry != null){
-			parentEntry.setChildren(children);
+	/**
+	 * Walks a directory. If the subtrees list is not null, only the direct
+	 * children are visited and a new scanner is created for each sub directory.
+	 */
+	private static class Scanner extends SimpleFileVisitor<Path>{
+		private final Path start;
+		private final SourceEntry startEntry;
+		private final FileFilter fileFilter;
+		private final List<Scanner> subtrees;
+		//SourceEntry or Scanner of sub directory
+		private final List<Object> results = new ArrayList<Object>();
+		private final LinkedList<SourceEntry> parents = new LinkedList<SourceEntry>();
+		private final LinkedList<List<SourceEntry>> children = new LinkedList<List<SourceEntry>>();
+		
+		private Scanner(Path start, SourceEntry startEntry, FileFilter fileFilter, List<Scanner> subtrees) {
+			this.start = start;
+			this.startEntry = startEntry;
+			this.fileFilter = fileFilter;
+			this.subtrees = subtrees;
+		}
+		
+		private void run(){
+			int maxDepth = subtrees != null ? 1 : Integer.MAX_VALUE;
+			try {
+				Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, this);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		private void collect(List<SourceEntry> list){
+			for(Object o: results){
+				if(o instanceof Scanner){
+					((Scanner) o).collect(list);
+				}else{
+					list.add((SourceEntry) o);
+				}
+			}
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+			SourceEntry entry = startEntry;
+			if(!parents.isEmpty()){
+				if(!fileFilter.accept(dir.toFile())){
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				entry = add(dir, attrs);
+			}
+			parents.push(entry);
+			children.push(new ArrayList<SourceEntry>());
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+			if(!fileFilter.accept(file.toFile())){
+				return FileVisitResult.CONTINUE;
+			}
+			SourceEntry entry = add(file, attrs);
+			if(attrs.isRegularFile()){
+				results.add(entry);
+			}else if(attrs.isDirectory() && subtrees != null){
+				//reached max depth
+				Scanner scanner = new Scanner(file, entry, fileFilter, null);
+				subtrees.add(scanner);
+				results.add(scanner);
+			}
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+			log.warn("Cannot read source file: " + file, exc);
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+			SourceEntry entry = parents.pop();
+			List<SourceEntry> list = children.pop();
+			if(entry != null){
+				entry.setChildren(list.toArray(new SourceEntry[list.size()]));
+			}
+			return FileVisitResult.CONTINUE;
+		}
+		
+		private SourceEntry add(Path path, BasicFileAttributes attrs){
+			SourceEntry entry = new SourceEntry(parents.peek(), path.toFile(), attrs);
+			children.peek().add(entry);
+			return entry;
 		}
 	}
 }
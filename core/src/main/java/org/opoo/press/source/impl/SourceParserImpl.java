@@ -15,17 +15,15 @@
  */
 package org.opoo.press.source.impl;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
-import java.util.Objects;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opoo.press.source.NoFrontMatterException;
@@ -35,108 +33,239 @@ import org.opoo.press.source.SourceParser;
 import org.yaml.snakeyaml.Yaml;
 
 /**
+ * Reads the file into one byte array and finds the front-matter delimiter
+ * lines in a single pass. Only the YAML header is decoded, the content is
+ * loaded by {@link LazySource} when required.
+ * 
+ * <p>Thread safe, every thread parses with its own {@link Yaml} created by
+ * {@link #createYaml()}, unless a shared yaml is set by {@link #setYaml(Yaml)}.
+ * 
  * @author Alex Lin
  *
  */
 public class SourceParserImpl implements SourceParser {
 	private static final Logger log = LoggerFactory.getLogger(SourceParserImpl.class);
-	private Yaml yaml = new Yaml();
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final int HEAD_SIZE = 7;
+	private Yaml yaml;
+	private final ThreadLocal<Yaml> yamls = new ThreadLocal<Yaml>(){
+		@Override
+		protected Yaml initialValue() {
+			return createYaml();
+		}
+	};
+	private final ThreadLocal<FlatYamlParser> flatYamlParsers = new ThreadLocal<FlatYamlParser>(){
+		@Override
+		protected FlatYamlParser initialValue() {
+			return new FlatYamlParser();
+		}
+	};
+	private FrontMatterCache frontMatterCache;
 	
 	/**
-	 * @return the yaml
+	 * Create the yaml of current thread, override to configure it.
+	 * @return a new {@link Yaml}
+	 */
+	protected Yaml createYaml(){
+		return new Yaml();
+	}
+
+	/**
+	 * @return the yaml set by {@link #setYaml(Yaml)}, or the yaml of current thread
 	 */
 	public Yaml getYaml() {
-		return yaml;
+		return yaml != null ? yaml : yamls.get();
 	}
 
 	/**
-	 * @param yaml the yaml to set
+	 * @param yaml the yaml used by all threads, the parser is not thread safe
+	 * if set, because {@link Yaml} is not
 	 */
 	public void setYaml(Yaml yaml) {
 		this.yaml = yaml;
 	}
 
+	/**
+	 * @param frontMatterCache the cache of parsed front-matter, may be null
+	 */
+	public void setFrontMatterCache(FrontMatterCache frontMatterCache) {
+		this.frontMatterCache = frontMatterCache;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.source.SourceParser#parse(org.opoo.press.source.SourceEntry)
 	 */
 	@Override
 	public Source parse(SourceEntry sourceEntry)	throws NoFrontMatterException {
-		List<String> metaLines = new ArrayList<String>();
-		List<String> contentLines = new ArrayList<String>();
-		InputStream stream = null;
-		List<String> currentList = metaLines;
-		try {
-			stream = new FileInputStream(sourceEntry.getFile());
-			LineIterator iterator = IOUtils.lineIterator(stream, "UTF-8");
+		//unchanged file, the YAML header is not parsed and the file is not read
+		//if the content is lazy loaded
+		FrontMatterCache.Cached cached = frontMatterCache != null ? frontMatterCache.get(sourceEntry) : null;
+		if(cached != null){
+			if(isLazyContent()){
+				return createSource(sourceEntry, cached.getMeta(), cached.getContentOffset());
+			}
+			byte[] bytes = read(sourceEntry);
+			int offset = Math.min(cached.getContentOffset(), bytes.length);
+			return createSource(sourceEntry, cached.getMeta(), LazySource.decodeContent(bytes, offset, bytes.length));
+		}
+		
+		byte[] bytes = read(sourceEntry);
+		int length = bytes.length;
+		
+		int start = hasBom(bytes, length) ? 3 : 0;
+		int end = lineEnd(bytes, start, length);
+		if(!isTripleDashedLine(bytes, start, end)){
+			log.debug("Maybe a static file: " + sourceEntry.getFile());
+			throw new NoFrontMatterException(sourceEntry);
+		}
+		if(start > 0){
+			log.debug("UTF-8 with BOM file: " + sourceEntry.getFile());
+		}
+		
+		int metaStart = nextLine(bytes, end, length);
+		int pos = metaStart;
+		int metaEnd = -1;
+		while(pos < length){
+			end = lineEnd(bytes, pos, length);
+			if(isTripleDashedLine(bytes, pos, end)){
+				metaEnd = pos;
+				break;
+			}
+			pos = nextLine(bytes, end, length);
+		}
+		
+		if(metaEnd == -1){
+			log.debug("Maybe a static file: " + sourceEntry.getFile());
+			throw new NoFrontMatterException(sourceEntry);
+		}
+		
+		Map<String, Object> map = parseFrontMatter(new String(bytes, metaStart, metaEnd - metaStart, UTF_8));
+		int contentOffset = nextLine(bytes, end, length);
+		if(frontMatterCache != null && map != null){
+			frontMatterCache.put(sourceEntry, map, contentOffset);
+		}
+		
+		if(isLazyContent()){
+			return createSource(sourceEntry, map, contentOffset);
+		}
+		return createSource(sourceEntry, map, LazySource.decodeContent(bytes, contentOffset, length));
+	}
+
+	/**
+	 * Parse the flat front-matter directly, others by the YAML parser.
+	 * @param text
+	 * @return front-matter map
+	 */
+	@SuppressWarnings("unchecked")
+	protected Map<String, Object> parseFrontMatter(String text){
+		Map<String, Object> map = flatYamlParsers.get().parse(text);
+		return map != null ? map : (Map<String, Object>) getYaml().load(text);
+	}
 
-			if(!iterator.hasNext()){
-				throw new RuntimeException("File not content: " + sourceEntry.getFile());
+	/**
+	 * Read the whole file, throw {@link NoFrontMatterException} if the file
+	 * does not start with '---' line, the remaining bytes of static files 
+	 * are not read.
+	 */
+	private static byte[] read(SourceEntry sourceEntry) throws NoFrontMatterException{
+		File file = sourceEntry.getFile();
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			long size = channel.size();
+			if(size == 0){
+				throw new RuntimeException("File not content: " + file);
 			}
-			
-			String line = iterator.next();
-			if(!isFrontMatterStartLine(line, sourceEntry)){
-				log.debug("Maybe a static file: " + sourceEntry.getFile());
+			if(size > Integer.MAX_VALUE){
 				throw new NoFrontMatterException(sourceEntry);
 			}
 			
-			boolean hasFrontMatterEndLine = false;
-			//process headers
-			while(iterator.hasNext()){
-				line = iterator.next();
-				if(isFrontMatterEndLine(line)){
-					hasFrontMatterEndLine = true;
-					currentList = contentLines;
-					continue;
-				}
-				currentList.add(line);
-			}
-			
-			if(!hasFrontMatterEndLine){
-				log.debug("Maybe a static file: " + sourceEntry.getFile());
+			ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, HEAD_SIZE));
+			readFully(channel, head);
+			if(!isFrontMatterStart(head.array(), head.position())){
+				log.debug("Maybe a static file: " + file);
 				throw new NoFrontMatterException(sourceEntry);
 			}
+			
+			byte[] bytes = new byte[(int) size];
+			System.arraycopy(head.array(), 0, bytes, 0, head.position());
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			buffer.position(head.position());
+			readFully(channel, buffer);
+			return bytes;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}finally{
-			IOUtils.closeQuietly(stream);
+			IOUtils.closeQuietly(channel);
 		}
-		
-		StringWriter metaWriter = new StringWriter();
-		StringWriter contentWriter = new StringWriter();
-		try {
-			IOUtils.writeLines(metaLines, null, metaWriter);
-			IOUtils.writeLines(contentLines, null, contentWriter);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}finally{
-			IOUtils.closeQuietly(contentWriter);
-			IOUtils.closeQuietly(metaWriter);
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException{
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer) == -1){
+				throw new IOException("File truncated while reading");
+			}
 		}
-		
-		@SuppressWarnings("unchecked")
-		Map<String, Object> map = (Map<String, Object>) yaml.load(metaWriter.toString());
-		String content = contentWriter.toString();
-		
-		return createSource(sourceEntry, map, content);
+	}
+
+	/**
+	 * Whether the content of source is loaded from file when required.
+	 * @return true by default
+	 */
+	protected boolean isLazyContent(){
+		return true;
+	}
+
+	protected Source createSource(SourceEntry sourceEntry, Map<String,Object> map, int contentOffset){
+		return new LazySource(sourceEntry, map, contentOffset);
 	}
 
 	protected Source createSource(SourceEntry sourceEntry, Map<String,Object> map, String content){
 		return new SimpleSource(sourceEntry, map, content);
 	}
 	
-	private static boolean isFrontMatterStartLine(String line, SourceEntry sourceEntry){
-		if( Source.TRIPLE_DASHED_LINE.equals(line)){
-			return true;
+	/**
+	 * Check the first bytes of file, BOM and '---' with line terminator.
+	 * @param head at least 4 bytes, or 7 bytes if starts with BOM
+	 * @param length
+	 * @return true if starts with the front-matter start line
+	 */
+	static boolean isFrontMatterStart(byte[] head, int length){
+		int start = hasBom(head, length) ? 3 : 0;
+		return length >= start + 4 && isTripleDashedLine(head, start, start + 3)
+				&& (head[start + 3] == '\n' || head[start + 3] == '\r');
+	}
+	
+	private static boolean hasBom(byte[] bytes, int length){
+		return length >= 3 && (bytes[0] & 0xFF) == 0xEF 
+				&& (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF;
+	}
+	
+	/**
+	 * @return index of the '\r' or '\n' ends the line, or length
+	 */
+	static int lineEnd(byte[] bytes, int pos, int length){
+		while(pos < length && bytes[pos] != '\n' && bytes[pos] != '\r'){
+			pos++;
 		}
-		if(line.length() == 4){
-			if(65279 == line.charAt(0) && Source.TRIPLE_DASHED_LINE.equals(line.substring(1))){
-				log.debug("UTF-8 with BOM file: " + sourceEntry.getFile());
-				return true; 
+		return pos;
+	}
+	
+	/**
+	 * @return start of next line, '\n', '\r' and '\r\n' are line terminators
+	 */
+	static int nextLine(byte[] bytes, int lineEnd, int length){
+		if(lineEnd < length && bytes[lineEnd] == '\r'){
+			lineEnd++;
+			if(lineEnd < length && bytes[lineEnd] == '\n'){
+				lineEnd++;
 			}
+			return lineEnd;
 		}
-		return false;
+		return lineEnd < length ? lineEnd + 1 : length;
 	}
-	private static boolean isFrontMatterEndLine(String line){
-		return Source.TRIPLE_DASHED_LINE.equals(line);
+	
+	private static boolean isTripleDashedLine(byte[] bytes, int start, int end){
+		return end - start == 3 && bytes[start] == '-' && bytes[start + 1] == '-' && bytes[start + 2] == '-';
 	}
 }
@@ -15,34 +15,66 @@
  */
 package org.opoo.press.task;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opoo.press.impl.SiteConfigImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Executes the build tasks of a site.
+ *
+ * <p>CPU bound tasks (parse, convert, render) run in a work-stealing pool
+ * sized to the thread count, the items are split into chunks. I/O bound
+ * tasks (write, copy, delete) run in a separate pool with much higher
+ * concurrency, virtual threads are used if the JDK supports it.
+ *
+ * <p>If any item throws an exception, the remaining items are skipped and
+ * the first exception is thrown. The pools are created on demand and
+ * released by {@link #shutdown()}.
+ *
  * @author Alex Lin
  *
  */
 public class TaskExecutor {
 	/**
-	 * Default thread count.
+	 * Default thread count, the number of processors. Set 'threads' to 1
+	 * in config or system property if any plugin is not thread safe.
 	 */
-	public static final int DEFAULT_THREADS = 1;
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Default thread count of I/O pool when virtual threads not supported.
+	 */
+	public static final int DEFAULT_IO_THREADS = 32;
+
+	/**
+	 * Chunks per thread, the more chunks the better load balancing.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
 
 	private static final Logger log = LoggerFactory.getLogger(TaskExecutor.class);
-	private ExecutorService executorService;
-	
+
+	private final int threads;
+	private final int ioThreads;
+	private ForkJoinPool cpuPool;
+	private ExecutorService ioPool;
+
 	public TaskExecutor(SiteConfigImpl config) {
 		//thread count
 		int threadsCount = Integer.parseInt(System.getProperty("threads", "-1"));
@@ -52,126 +84,292 @@ public class TaskExecutor {
 		if(threadsCount <= 0){
 			threadsCount = DEFAULT_THREADS;
 		}
+		this.threads = threadsCount;
+		this.ioThreads = config.get("io_threads", DEFAULT_IO_THREADS);
+
 		if(threadsCount > 1){
-			executorService = Executors.newFixedThreadPool(threadsCount);
-			log.info("Executing build in threads: " + threadsCount);
+			log.info("Executing build in threads: " + threadsCount + ", I/O threads: " + ioThreads);
 		}else{
 			log.info("Executing build in single thread.");
 		}
 	}
-	
+
+	private synchronized ForkJoinPool getCpuPool(){
+		if(cpuPool == null){
+			cpuPool = new ForkJoinPool(threads);
+		}
+		return cpuPool;
+	}
+
+	private synchronized ExecutorService getIoPool(){
+		if(ioPool == null){
+			ioPool = newVirtualThreadPerTaskExecutor();
+			if(ioPool == null){
+				ioPool = Executors.newFixedThreadPool(ioThreads, new DaemonThreadFactory("opoopress-io-"));
+				log.debug("I/O pool threads: {}", ioThreads);
+			}else{
+				log.debug("I/O pool: virtual threads");
+			}
+		}
+		return ioPool;
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor(){
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			//JDK without virtual threads
+			return null;
+		}
+	}
+
+	/**
+	 * Release all threads, pools will be recreated if required again.
+	 */
+	public synchronized void shutdown(){
+		if(cpuPool != null){
+			cpuPool.shutdownNow();
+			cpuPool = null;
+		}
+		if(ioPool != null){
+			ioPool.shutdownNow();
+			ioPool = null;
+		}
+	}
+
+	private boolean isSingleThread(){
+		return threads <= 1;
+	}
+
 	public void run(Runnable task){
-		if(executorService == null){
+		if(isSingleThread()){
 			task.run();
 			return;
 		}
-		
-		Future<?> future = executorService.submit(task);
+
+		Future<?> future = getCpuPool().submit(task);
 		try {
 			future.get();
-		} catch (Exception e) {
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw propagate(e.getCause());
 		}
 	}
-	
+
 	public <V> V call(Callable<V> task) throws Exception{
-		if(executorService == null){
+		if(isSingleThread()){
 			return task.call();
 		}
-		
-		Future<V> future = executorService.submit(task);
+
+		Future<V> future = getCpuPool().submit(task);
 		return future.get();
 	}
-	
+
+	/**
+	 * Run CPU bound task for each item.
+	 * @param list
+	 * @param task
+	 */
 	public <T> void run(Collection<T> list, final RunnableTask<T> task){
-		if(executorService == null){
+		if(isSingleThread()){
 			for(T t: list){
 				task.run(t);
 			}
 			return;
 		}
-		
-		int size = list.size();
-		CompletionService<Integer> cs = new ExecutorCompletionService<Integer>(executorService);
-		for(final T input:list){
-			cs.submit(new Runnable(){
-				public void run() {
-					task.run(input);
-				}}, 1);
-		}
-		
-        try {
-			for(int i = 0 ; i < size ; i++){
-				cs.take().get();
+
+		invoke(list, new CallableTask<T,Object>(){
+			public Object call(T input) {
+				task.run(input);
+				return null;
 			}
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
-		}
+		});
 	}
-	
+
+	/**
+	 * Call CPU bound task for each item.
+	 * @param list
+	 * @param task
+	 * @return results in the same order as the input list
+	 */
 	public <T,V> List<V> call(Collection<T> list, final CallableTask<T,V> task){
-		List<V> result = new ArrayList<V>();
-		if(executorService == null){
+		if(isSingleThread()){
+			List<V> result = new ArrayList<V>();
 			for(T t: list){
 				result.add(task.call(t));
 			}
 			return result;
 		}
-		
-		
-		int size = list.size();
-		CompletionService<V> cs = new ExecutorCompletionService<V>(executorService);
-		for(final T input:list){
-			cs.submit(new Callable<V>(){
-				public V call() throws Exception {
-					return task.call(input);
-				}});
-		}
-		
-        try {
-			for(int i = 0 ; i < size ; i++){
-				result.add(cs.take().get());
+		return invoke(list, task);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T,V> List<V> invoke(Collection<T> list, CallableTask<T,V> task){
+		Object[] items = list.toArray();
+		Object[] results = new Object[items.length];
+		if(items.length == 0){
+			return new ArrayList<V>();
+		}
+
+		int chunkSize = Math.max(1, items.length / (threads * CHUNKS_PER_THREAD));
+		ChunkAction<T,V> action = new ChunkAction<T,V>(items, results, 0, items.length,
+				chunkSize, task, new AtomicReference<Throwable>());
+		getCpuPool().invoke(action);
+		action.rethrow();
+		return (List<V>) Arrays.asList(results);
+	}
+
+	/**
+	 * Run I/O bound task for each item, such as write, copy and delete files.
+	 * @param list
+	 * @param task
+	 */
+	public <T> void runIO(Collection<T> list, final RunnableTask<T> task){
+		if(ioThreads <= 1){
+			for(T t: list){
+				task.run(t);
+			}
+			return;
+		}
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService pool = getIoPool();
+		List<Future<?>> futures = new ArrayList<Future<?>>(list.size());
+		for(final T input: list){
+			futures.add(pool.submit(new Runnable(){
+				public void run() {
+					//fail fast
+					if(failure.get() != null){
+						return;
+					}
+					try{
+						task.run(input);
+					}catch(Throwable e){
+						failure.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+
+		try {
+			for(Future<?> future: futures){
+				if(failure.get() != null){
+					break;
+				}
+				future.get();
 			}
 		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
 		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+			failure.compareAndSet(null, e.getCause());
+		} catch (CancellationException e) {
+			failure.compareAndSet(null, e);
+		}
+
+		Throwable e = failure.get();
+		if(e != null){
+			for(Future<?> future: futures){
+				future.cancel(true);
+			}
+			throw propagate(e);
 		}
-        return result;
 	}
-	
+
 	public void run(Runnable... tasks){
-		List<Runnable> taskList = new ArrayList<Runnable>();
-		for(Runnable task: tasks){
-			taskList.add(task);
-		}
-		run(taskList);
+		run(Arrays.asList(tasks));
 	}
-	
+
 	public void run(List<Runnable> tasks){
-		if(executorService == null){
-			for(Runnable t: tasks){
-				t.run();
+		run(tasks, new RunnableTask<Runnable>(){
+			public void run(Runnable task) {
+				task.run();
 			}
-			return;
+		});
+	}
+
+	private static RuntimeException propagate(Throwable e){
+		if(e instanceof RuntimeException){
+			return (RuntimeException) e;
 		}
+		if(e instanceof Error){
+			throw (Error) e;
+		}
+		return new RuntimeException(e);
+	}
 
-		int size = tasks.size();
-		CompletionService<Integer> cs = new ExecutorCompletionService<Integer>(executorService);
-		for(final Runnable task : tasks){
-			cs.submit(task, 1);
+	/**
+	 * Splits the items until the chunk size reached, idle threads steal
+	 * the chunks from the busy threads.
+	 */
+	private static class ChunkAction<T,V> extends RecursiveAction{
+		private static final long serialVersionUID = 3618233512866394633L;
+		private final Object[] items;
+		private final Object[] results;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+		private final CallableTask<T,V> task;
+		private final AtomicReference<Throwable> failure;
+
+		private ChunkAction(Object[] items, Object[] results, int from, int to, int chunkSize,
+				CallableTask<T,V> task, AtomicReference<Throwable> failure) {
+			this.items = items;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.task = task;
+			this.failure = failure;
 		}
-		
-        try {
-			for(int i = 0 ; i < size ; i++){
-				cs.take().get();
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected void compute() {
+			if(to - from > chunkSize){
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkAction<T,V>(items, results, from, middle, chunkSize, task, failure),
+						new ChunkAction<T,V>(items, results, middle, to, chunkSize, task, failure));
+				return;
 			}
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+
+			for(int i = from ; i < to ; i++){
+				//fail fast
+				if(failure.get() != null){
+					return;
+				}
+				try{
+					results[i] = task.call((T) items[i]);
+				}catch(Throwable e){
+					failure.compareAndSet(null, e);
+					return;
+				}
+			}
+		}
+
+		private void rethrow(){
+			Throwable e = failure.get();
+			if(e != null){
+				throw propagate(e);
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory{
+		private final AtomicInteger count = new AtomicInteger();
+		private final String prefix;
+
+		private DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 	}
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.template;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.opoo.press.Page;
+import org.opoo.press.Post;
+
+import freemarker.core.Environment;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * Renders the body once for each key in a build, and writes the same output
+ * for the other pages. Usage:
+ * <pre>
+ * &lt;@cache key="recent_posts"&gt;...&lt;/@cache&gt;
+ * &lt;@cache key="asides" vary="locale,page_type"&gt;...&lt;/@cache&gt;
+ * </pre>
+ *
+ * <p>'vary' adds the locale of template and/or the type of current page
+ * ('post' or 'page') to the key. The body must not assign variables used
+ * outside it, only the output is cached. The same key may be rendered at
+ * the same time in different build threads, the first output is kept.
+ * Templates should check <code>cache??</code> before using it, the
+ * directive is not available in other renderers.
+ *
+ * <p>SiteImpl clears the fragments at the start of each build, both
+ * full and incremental, so the preview server never serves stale fragments.
+ *
+ * @author Alex Lin
+ */
+public class CacheDirective implements TemplateDirectiveModel {
+	private final ConcurrentMap<String, String> fragments = new ConcurrentHashMap<String, String>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/* (non-Javadoc)
+	 * @see freemarker.template.TemplateDirectiveModel#execute(freemarker.core.Environment, java.util.Map, freemarker.template.TemplateModel[], freemarker.template.TemplateDirectiveBody)
+	 */
+	@Override
+	public void execute(Environment env, @SuppressWarnings("rawtypes") Map params,
+			TemplateModel[] loopVars, TemplateDirectiveBody body) throws TemplateException, IOException {
+		if(body == null){
+			return;
+		}
+		String key = getString(params, "key");
+		if(StringUtils.isBlank(key)){
+			throw new TemplateModelException("Parameter 'key' of cache directive is required.");
+		}
+		String vary = getString(params, "vary");
+		if(vary != null){
+			key = buildKey(env, key, vary);
+		}
+
+		String output = fragments.get(key);
+		if(output != null){
+			hits.incrementAndGet();
+		}else{
+			misses.incrementAndGet();
+			StringWriter out = new StringWriter();
+			body.render(out);
+			output = out.toString();
+			String old = fragments.putIfAbsent(key, output);
+			if(old != null){
+				output = old;
+			}
+		}
+		env.getOut().write(output);
+	}
+
+	private static String getString(@SuppressWarnings("rawtypes") Map params, String name) throws TemplateModelException{
+		Object value = params.get(name);
+		if(value == null){
+			return null;
+		}
+		if(!(value instanceof TemplateScalarModel)){
+			throw new TemplateModelException("Parameter '" + name + "' of cache directive must be a string.");
+		}
+		return ((TemplateScalarModel) value).getAsString();
+	}
+
+	private static String buildKey(Environment env, String key, String vary) throws TemplateModelException{
+		StringBuilder sb = new StringBuilder(key);
+		for(String name: StringUtils.split(vary, ", ")){
+			if("locale".equals(name)){
+				sb.append('|').append(env.getLocale());
+			}else if("page_type".equals(name)){
+				sb.append('|').append(getPageType(env.getVariable("page")));
+			}else{
+				throw new TemplateModelException("Unknown vary of cache directive: " + name);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String getPageType(TemplateModel model){
+		Object page = model instanceof AdapterTemplateModel ? ((AdapterTemplateModel) model).getAdaptedObject(Object.class) : null;
+		if(page instanceof Post){
+			return "post";
+		}
+		if(page instanceof Page){
+			return "page";
+		}
+		return page != null ? page.getClass().getName() : "";
+	}
+
+	public long getHits(){
+		return hits.get();
+	}
+
+	public long getMisses(){
+		return misses.get();
+	}
+
+	/**
+	 * @return cached fragments count
+	 */
+	public int size(){
+		return fragments.size();
+	}
+
+	/**
+	 * Remove all cached fragments and reset the counters, call this before
+	 * each build.
+	 */
+	public void clear(){
+		fragments.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+}
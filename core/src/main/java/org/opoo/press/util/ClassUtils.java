@@ -15,6 +15,11 @@
  */
 package org.opoo.press.util;
 
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+
 import org.opoo.press.Initializable;
 import org.opoo.press.Site;
 
@@ -67,4 +72,35 @@ public abstract class ClassUtils extends org.apache.commons.lang.ClassUtils {
 			throw new RuntimeException("Create instance failed: " + className, e);
 		}
 	}
+
+	/**
+	 * The version of the class, the implementation version of its package,
+	 * the path, size and last modified time of the jar or class file it
+	 * loaded from. A rebuilt snapshot jar is a new version.
+	 * @param clazz
+	 * @return version string
+	 */
+	public static String getVersion(Class<?> clazz){
+		Package p = clazz.getPackage();
+		StringBuilder sb = new StringBuilder(String.valueOf(p != null ? p.getImplementationVersion() : null));
+		CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+		URL location = codeSource != null ? codeSource.getLocation() : null;
+		if(location != null){
+			try {
+				File file = new File(location.toURI());
+				if(file.isDirectory()){
+					file = new File(file, clazz.getName().replace('.', '/') + ".class");
+				}
+				sb.append(',').append(file.getPath())
+					.append(',').append(file.length())
+					.append(',').append(file.lastModified());
+			} catch (URISyntaxException e) {
+				sb.append(',').append(location);
+			} catch (IllegalArgumentException e) {
+				//not a file URI
+				sb.append(',').append(location);
+			}
+		}
+		return sb.toString();
+	}
 }
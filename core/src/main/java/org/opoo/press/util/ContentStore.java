@@ -0,0 +1,276 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content store of posts, pages and sources. The most recently used
+ * contents are kept in heap within the heap size, others are evicted to a
+ * memory-mapped segment file as UTF-8 bytes and decoded again when required.
+ *
+ * <p>The segment file is append-only, {@link #clear()} reuses the mapped
+ * segments from the beginning, {@link #close()} releases them. Thread safe.
+ *
+ * @author Alex Lin
+ */
+public class ContentStore {
+	private static final Logger log = LoggerFactory.getLogger(ContentStore.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+	private final long heapSize;
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(256, 0.75f, true);
+	private long heapUsed;
+
+	private FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long fileSize;
+	private int segment;
+	private int position;
+
+	/**
+	 * @param file the segment file
+	 * @param heapSize max bytes of contents kept in heap
+	 */
+	public ContentStore(File file, long heapSize) {
+		this.file = file;
+		this.heapSize = heapSize;
+	}
+
+	/**
+	 * @param key
+	 * @return the content, or null if not found
+	 */
+	public String get(Object key){
+		Ref ref;
+		synchronized (this) {
+			Entry e = entries.get(key);
+			if(e == null){
+				return null;
+			}
+			if(e.content != null){
+				return e.content;
+			}
+			ref = e.ref;
+		}
+
+		//decode out of lock, the bytes are never overwritten before clear()
+		String content = ref.read();
+		synchronized (this) {
+			Entry e = entries.get(key);
+			if(e != null && e.ref == ref && e.content == null){
+				e.content = content;
+				heapUsed += sizeOf(content);
+				evict(e);
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * @param key
+	 * @param content the content, remove the key if null
+	 */
+	public synchronized void put(Object key, String content){
+		remove(key);
+		if(content == null){
+			return;
+		}
+		Entry e = new Entry(content);
+		entries.put(key, e);
+		heapUsed += sizeOf(content);
+		evict(e);
+	}
+
+	public synchronized void remove(Object key){
+		Entry e = entries.remove(key);
+		if(e != null && e.content != null){
+			heapUsed -= sizeOf(e.content);
+		}
+	}
+
+	/**
+	 * Remove all contents, the space of segment file is reused.
+	 */
+	public synchronized void clear(){
+		entries.clear();
+		heapUsed = 0;
+		segment = 0;
+		position = 0;
+	}
+
+	/**
+	 * Remove all contents, close the segment file and release the mapped
+	 * segments. The store can be used again, a new segment file is opened
+	 * when required.
+	 */
+	public synchronized void close(){
+		clear();
+		segments.clear();
+		fileSize = 0;
+		if(channel != null){
+			IOUtils.closeQuietly(channel);
+			channel = null;
+		}
+	}
+
+	/**
+	 * Evict the least recently used contents to segment file until the
+	 * heap used is not greater than the heap size.
+	 * @param keep the entry just used, never evicted
+	 */
+	private void evict(Entry keep){
+		if(heapUsed <= heapSize){
+			return;
+		}
+		Iterator<Entry> it = entries.values().iterator();
+		while(heapUsed > heapSize && it.hasNext()){
+			Entry e = it.next();
+			if(e == keep || e.content == null){
+				continue;
+			}
+			if(e.ref == null){
+				e.ref = write(e.content.getBytes(UTF_8));
+			}
+			heapUsed -= sizeOf(e.content);
+			e.content = null;
+		}
+	}
+
+	private Ref write(byte[] bytes){
+		try{
+			MappedByteBuffer buffer = allocate(bytes.length);
+			ByteBuffer dup = buffer.duplicate();
+			dup.position(position);
+			dup.put(bytes);
+			Ref ref = new Ref(buffer, position, bytes.length);
+			position += bytes.length;
+			return ref;
+		}catch(IOException e){
+			throw new RuntimeException("Write content store failed: " + file, e);
+		}
+	}
+
+	/**
+	 * Find the segment has enough space, map a new segment if required.
+	 */
+	private MappedByteBuffer allocate(int length) throws IOException{
+		while(segment < segments.size()){
+			MappedByteBuffer buffer = segments.get(segment);
+			if(buffer.capacity() - position >= length){
+				return buffer;
+			}
+			segment++;
+			position = 0;
+		}
+
+		if(channel == null){
+			open();
+		}
+		int size = Math.max(SEGMENT_SIZE, length);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+		fileSize += size;
+		segments.add(buffer);
+		segment = segments.size() - 1;
+		position = 0;
+		log.debug("Content store segment mapped: {} bytes, total {} bytes", size, fileSize);
+		return buffer;
+	}
+
+	@SuppressWarnings("resource")
+	private void open() throws IOException{
+		file.getParentFile().mkdirs();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			raf.setLength(0);
+			channel = raf.getChannel();
+		}catch(IOException e){
+			IOUtils.closeQuietly(raf);
+			throw e;
+		}
+		//the mapped segments are still valid after the file deleted
+		if(!file.delete()){
+			file.deleteOnExit();
+		}
+		fileSize = 0;
+	}
+
+	private static long sizeOf(String content){
+		return 40L + 2L * content.length();
+	}
+
+	/**
+	 * @return bytes of contents in heap
+	 */
+	public synchronized long getHeapUsed(){
+		return heapUsed;
+	}
+
+	/**
+	 * @return contents count
+	 */
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	private static class Entry{
+		private String content;
+		private Ref ref;
+
+		private Entry(String content) {
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Bytes of content in segment file.
+	 */
+	private static class Ref{
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int length;
+
+		private Ref(ByteBuffer buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		private String read(){
+			byte[] bytes = new byte[length];
+			ByteBuffer dup = buffer.duplicate();
+			dup.position(offset);
+			dup.get(bytes);
+			return new String(bytes, UTF_8);
+		}
+	}
+}
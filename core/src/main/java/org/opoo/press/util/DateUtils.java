@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.time.FastDateFormat;
+
+/**
+ * Date parsing and formatting with shared formats: immutable
+ * {@link FastDateFormat} cached by pattern and locale for formatting, and
+ * {@link SimpleDateFormat} cached in each thread for parsing.
+ *
+ * @author Alex Lin
+ */
+public abstract class DateUtils {
+	private static final ConcurrentMap<String, FastDateFormat> FORMATS = new ConcurrentHashMap<String, FastDateFormat>();
+	private static final ThreadLocal<Map<String, DateFormat>> PARSERS = new ThreadLocal<Map<String, DateFormat>>(){
+		@Override
+		protected Map<String, DateFormat> initialValue() {
+			return new HashMap<String, DateFormat>();
+		}
+	};
+
+	/**
+	 * @param date
+	 * @param pattern
+	 * @param locale the locale, or null for default locale
+	 * @return formatted string, or null if date is null
+	 */
+	public static String format(Date date, String pattern, Locale locale){
+		if(date == null){
+			return null;
+		}
+		return getFormat(pattern, locale).format(date);
+	}
+
+	/**
+	 * @param pattern
+	 * @param locale the locale, or null for default locale
+	 * @return the shared format
+	 */
+	public static FastDateFormat getFormat(String pattern, Locale locale){
+		String key = locale != null ? pattern + "|" + locale : pattern;
+		FastDateFormat format = FORMATS.get(key);
+		if(format == null){
+			format = locale != null ? FastDateFormat.getInstance(pattern, locale) : FastDateFormat.getInstance(pattern);
+			FORMATS.putIfAbsent(key, format);
+		}
+		return format;
+	}
+
+	/**
+	 * Parse the string by the patterns in order.
+	 * @param string
+	 * @param patterns
+	 * @return the date, or null if no pattern matches
+	 */
+	public static Date parse(String string, String... patterns){
+		Map<String, DateFormat> parsers = PARSERS.get();
+		for(String pattern: patterns){
+			DateFormat parser = parsers.get(pattern);
+			if(parser == null){
+				parser = new SimpleDateFormat(pattern);
+				parsers.put(pattern, parser);
+			}
+			try {
+				return parser.parse(string);
+			} catch (ParseException e) {
+				//try next
+			}
+		}
+		return null;
+	}
+}
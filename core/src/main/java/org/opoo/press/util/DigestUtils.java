@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @author Alex Lin
+ *
+ */
+public abstract class DigestUtils {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	public static byte[] md5(byte[] bytes){
+		try {
+			return MessageDigest.getInstance("MD5").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String md5Hex(byte[] bytes){
+		return toHex(md5(bytes));
+	}
+
+	public static String md5Hex(String string){
+		try {
+			return md5Hex(string.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes){
+		char[] chars = new char[bytes.length * 2];
+		for(int i = 0 ; i < bytes.length ; i++){
+			int b = bytes[i] & 0xFF;
+			chars[i * 2] = HEX_DIGITS[b >>> 4];
+			chars[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
+		}
+		return new String(chars);
+	}
+}
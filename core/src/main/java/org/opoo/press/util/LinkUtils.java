@@ -19,13 +19,24 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
-
 /**
  * @author Alex Lin
  *
  */
 public abstract class LinkUtils {
+	//Calendar is not thread safe and expensive to create
+	private static final ThreadLocal<Calendar> CALENDARS = new ThreadLocal<Calendar>(){
+		@Override
+		protected Calendar initialValue() {
+			return Calendar.getInstance();
+		}
+	};
+	private static final String[] PADDED = new String[100];
+	static{
+		for(int i = 0 ; i < PADDED.length ; i++){
+			PADDED[i] = i < 10 ? "0" + i : String.valueOf(i);
+		}
+	}
 	
 	public static void addDateParams(Map<String,Object> params, Date date){
 		if(date == null){
@@ -34,20 +45,29 @@ public abstract class LinkUtils {
 		if(params == null){
 			return;
 		}
-		Calendar c = Calendar.getInstance();
+		Calendar c = getCalendar(date);
+		params.put("year", String.valueOf(c.get(Calendar.YEAR)));
+		params.put("month", pad(c.get(Calendar.MONTH) + 1));
+		params.put("day", pad(c.get(Calendar.DAY_OF_MONTH)));
+		params.put("hour", pad(c.get(Calendar.HOUR_OF_DAY)));
+		params.put("minute", pad(c.get(Calendar.MINUTE)));
+		params.put("second", pad(c.get(Calendar.SECOND)));
+	}
+	
+	/**
+	 * @param date
+	 * @return the calendar of current thread, set to the date
+	 */
+	static Calendar getCalendar(Date date){
+		Calendar c = CALENDARS.get();
 		c.setTime(date);
-		int year = c.get(Calendar.YEAR);
-		int monthnum = c.get(Calendar.MONTH) + 1;
-		int day = c.get(Calendar.DAY_OF_MONTH);
-		int hour = c.get(Calendar.HOUR_OF_DAY);
-		int minute = c.get(Calendar.MINUTE);
-		int second = c.get(Calendar.SECOND);
-		
-		params.put("year", year + "");
-		params.put("month", StringUtils.leftPad(monthnum + "", 2, '0'));
-		params.put("day", StringUtils.leftPad(day + "", 2, '0'));
-		params.put("hour", StringUtils.leftPad(hour + "", 2, '0'));
-		params.put("minute", StringUtils.leftPad(minute + "", 2, '0'));
-		params.put("second", StringUtils.leftPad(second + "", 2, '0'));
+		return c;
+	}
+	
+	/**
+	 * Left pad the number to 2 digits with '0'.
+	 */
+	static String pad(int value){
+		return value >= 0 && value < PADDED.length ? PADDED[value] : String.valueOf(value);
 	}
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Permalink style compiled into literal and variable tokens, such as
+ * <code>/article/${year}/${month}/${name}/</code>. Only the styles with
+ * plain <code>${variable}</code> interpolations are compiled, other
+ * FreeMarker syntax must be rendered by the template engine.
+ *
+ * <p>Date variables 'year', 'month', 'day', 'hour', 'minute' and 'second'
+ * are the same as {@link LinkUtils#addDateParams(Map, Date)}. Immutable
+ * and thread safe.
+ *
+ * @author Alex Lin
+ */
+public class PermalinkPattern {
+	private static final int MAX_CACHED = 1000;
+	private static final PermalinkPattern NOT_COMPILABLE = new PermalinkPattern(new Token[0]);
+	private static final ConcurrentMap<String, PermalinkPattern> CACHE = new ConcurrentHashMap<String, PermalinkPattern>();
+
+	private final Token[] tokens;
+
+	private PermalinkPattern(Token[] tokens) {
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Compile the permalink style, the compiled patterns are cached.
+	 * @param style
+	 * @return the pattern, or null if the style contains FreeMarker syntax
+	 * other than <code>${variable}</code>
+	 */
+	public static PermalinkPattern compile(String style){
+		PermalinkPattern pattern = CACHE.get(style);
+		if(pattern == null){
+			pattern = parse(style);
+			if(CACHE.size() < MAX_CACHED){
+				CACHE.putIfAbsent(style, pattern);
+			}
+		}
+		return pattern != NOT_COMPILABLE ? pattern : null;
+	}
+
+	private static PermalinkPattern parse(String style){
+		if(style.contains("<#") || style.contains("</#") || style.contains("<@") || style.contains("</@")
+				|| style.contains("#{") || style.contains("[#") || style.contains("[@")){
+			return NOT_COMPILABLE;
+		}
+		List<Token> tokens = new ArrayList<Token>();
+		int pos = 0;
+		while(pos < style.length()){
+			int start = style.indexOf("${", pos);
+			if(start == -1){
+				tokens.add(new Token(Token.LITERAL, style.substring(pos)));
+				break;
+			}
+			int end = style.indexOf('}', start);
+			if(end == -1){
+				return NOT_COMPILABLE;
+			}
+			String name = style.substring(start + 2, end);
+			if(!isIdentifier(name)){
+				return NOT_COMPILABLE;
+			}
+			if(start > pos){
+				tokens.add(new Token(Token.LITERAL, style.substring(pos, start)));
+			}
+			tokens.add(new Token(getType(name), name));
+			pos = end + 1;
+		}
+		return new PermalinkPattern(tokens.toArray(new Token[tokens.size()]));
+	}
+
+	private static boolean isIdentifier(String name){
+		if(name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))){
+			return false;
+		}
+		for(int i = 1 ; i < name.length() ; i++){
+			if(!Character.isJavaIdentifierPart(name.charAt(i))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getType(String name){
+		if("year".equals(name)){
+			return Calendar.YEAR;
+		}else if("month".equals(name)){
+			return Calendar.MONTH;
+		}else if("day".equals(name)){
+			return Calendar.DAY_OF_MONTH;
+		}else if("hour".equals(name)){
+			return Calendar.HOUR_OF_DAY;
+		}else if("minute".equals(name)){
+			return Calendar.MINUTE;
+		}else if("second".equals(name)){
+			return Calendar.SECOND;
+		}
+		return Token.VARIABLE;
+	}
+
+	/**
+	 * Format the permalink.
+	 * @param date the date
+	 * @param params variables, such as the name of post
+	 * @param meta other variables, such as front-matter of post
+	 * @return the link, or null if any variable is not found or not a
+	 * string, or the date is required but null, it must be rendered by
+	 * template engine
+	 */
+	public String format(Date date, Map<String, ?> params, Map<String, ?> meta){
+		StringBuilder sb = new StringBuilder(64);
+		Calendar c = null;
+		for(Token token: tokens){
+			switch(token.type){
+			case Token.LITERAL:
+				sb.append(token.value);
+				break;
+			case Token.VARIABLE:
+				Object value = params.get(token.value);
+				if(value == null && meta != null){
+					value = meta.get(token.value);
+				}
+				if(!(value instanceof String)){
+					return null;
+				}
+				sb.append((String) value);
+				break;
+			case Calendar.YEAR:
+				if(c == null){
+					if(date == null){
+						return null;
+					}
+					c = LinkUtils.getCalendar(date);
+				}
+				sb.append(c.get(Calendar.YEAR));
+				break;
+			default:
+				if(c == null){
+					if(date == null){
+						return null;
+					}
+					c = LinkUtils.getCalendar(date);
+				}
+				int field = c.get(token.type);
+				sb.append(LinkUtils.pad(token.type == Calendar.MONTH ? field + 1 : field));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static class Token{
+		private static final int LITERAL = -1;
+		private static final int VARIABLE = -2;
+		private final int type;
+		private final String value;
+
+		private Token(int type, String value) {
+			this.type = type;
+			this.value = value;
+		}
+	}
+}
@@ -1,4 +1,3 @@
-<#if site.categories?? &&  (site.categories?size > 0)>
 <#macro subcategory parent level>
 <#if (parent.children?size > 0)>
     <ul class="children${level}">
@@ -11,6 +10,8 @@
     </ul>
 </#if>
 </#macro>
+<#macro categories_aside>
+<#if site.categories?? &&  (site.categories?size > 0)>
 
 <section>
   <h1><@i18n.msg "Categories"/></h1>
@@ -24,3 +25,5 @@
   </ul>
 </section>
 </#if>
+</#macro>
+<#if cache??><@cache key="categories"><@categories_aside/></@cache><#else><@categories_aside/></#if>
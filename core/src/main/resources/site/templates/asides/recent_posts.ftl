@@ -1,3 +1,4 @@
+<#macro recent_posts_aside>
 <section>
   <h1><@i18n.msg "Recent Posts"/></h1>
   <ul id="recent_posts">
@@ -15,3 +16,5 @@
     </#list>
   </ul>
 </section>
+</#macro>
+<#if cache??><@cache key="recent_posts"><@recent_posts_aside/></@cache><#else><@recent_posts_aside/></#if>
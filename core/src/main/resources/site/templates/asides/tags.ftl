@@ -1,3 +1,4 @@
+<#macro tags_aside>
 <#if (site.tags?size > 0)>
 <section>
   <h1><@i18n.msg "Tags"/></h1>
@@ -7,4 +8,6 @@
 </#list>
   </ul>
 </section>
-</#if>
\ No newline at end of file
+</#if>
+</#macro>
+<#if cache??><@cache key="tags"><@tags_aside/></@cache><#else><@tags_aside/></#if>
\ No newline at end of file